@@ -0,0 +1,78 @@
+package benchmarks;
+
+import io.gatling.commons.validation.Validation;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.core.internal.Expressions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Function1;
+import templates.JsonTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Per-request cost of rendering {@code feeders/bodies/newGameTemplate.json} the way {@code ElFileBody} does:
+ * the template is compiled once (Gatling caches it per file) and evaluated against the session for every request,
+ * compared with the same template rendered by {@link JsonTemplate}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElFileBodyBenchmark {
+
+    static final String TEMPLATE_RESOURCE = "feeders/bodies/newGameTemplate.json";
+
+    private Function1<io.gatling.core.session.Session, Validation<String>> elTemplate;
+    private JsonTemplate jsonTemplate;
+    private Session session;
+
+    @Setup
+    public void setUp() throws IOException {
+        elTemplate = Expressions.toStringExpression(readTemplate());
+        jsonTemplate = JsonTemplate.compile(readTemplate());
+        session = Sessions.of(gameAttributes());
+    }
+
+    static String readTemplate() throws IOException {
+        try (InputStream in = requireNonNull(
+                ElFileBodyBenchmark.class.getClassLoader().getResourceAsStream(TEMPLATE_RESOURCE), TEMPLATE_RESOURCE)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static Map<String, Object> gameAttributes() {
+        return Map.of(
+                "name", "aB3xY-gameName",
+                "releaseDate", "1997-08-20",
+                "reviewScore", 97,
+                "category", "Qw9zT-category",
+                "rating", "Mt7k-rating");
+    }
+
+    @Benchmark
+    public byte[] renderElFileBody() {
+        return elTemplate.apply(session.asScala()).toOption().get().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] renderJsonTemplate() {
+        return jsonTemplate.render(session::get, session::contains);
+    }
+}
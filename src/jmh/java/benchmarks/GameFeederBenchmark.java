@@ -0,0 +1,106 @@
+package benchmarks;
+
+import feeders.GameIdFeeder;
+import feeders.RandomGameFeeder;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.GameIdGenerator;
+
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Records/sec of the pooled feeders against the former {@code Stream.generate} feeders of VideoGameDbFeeders.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} for the bytes allocated per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class GameFeederBenchmark {
+
+    private static final int MIN_GAME_ID = 1;
+    private static final int MAX_GAME_ID = 10;
+
+    // verbatim copies of the feeders VideoGameDbFeeders used before the pooled feeders
+    private final Iterator<Map<String, Object>> legacyGameIdFeeder =
+            Stream.generate(() -> {
+                Random rand = new SecureRandom();
+                int gameId = rand.nextInt(MIN_GAME_ID, MAX_GAME_ID + 1);
+                Map<String, Object> map = new HashMap<>();
+                map.put("gameId", gameId);
+                return map;
+            }).iterator();
+
+    private final Iterator<Map<String, Object>> legacyCreateGameFeeder =
+            Stream.generate(() -> {
+
+                String gameName = RandomStringUtils.secure().nextAlphanumeric(5) + "-gameName";
+                String releaseDate = randomDate().toString();
+                int reviewScore = new SecureRandom().nextInt(100);
+                String category = RandomStringUtils.secure().nextAlphanumeric(5) + "-category";
+                String rating = RandomStringUtils.secure().nextAlphanumeric(4) + "-rating";
+
+                Map<String, Object> gameMap = new HashMap<>();
+                gameMap.put("name", gameName);
+                gameMap.put("releaseDate", releaseDate);
+                gameMap.put("reviewScore", reviewScore);
+                gameMap.put("category", category);
+                gameMap.put("rating", rating);
+                return gameMap;
+            }).iterator();
+
+    private final Iterator<Map<String, Object>> gameIdFeeder =
+            new GameIdFeeder(GameIdGenerator.uniform(MIN_GAME_ID, MAX_GAME_ID));
+
+    private final Iterator<Map<String, Object>> createGameFeeder = new RandomGameFeeder();
+
+    private static LocalDate randomDate() {
+        int hundredYears = 100 * 365;
+        return LocalDate.ofEpochDay(ThreadLocalRandom.current().nextInt(-hundredYears, hundredYears));
+    }
+
+    // the stream iterator is not thread-safe, Gatling serializes feeder access the same way
+    @Benchmark
+    public Map<String, Object> legacyGameId() {
+        synchronized (legacyGameIdFeeder) {
+            return legacyGameIdFeeder.next();
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> pooledGameId() {
+        return gameIdFeeder.next();
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyCreateGame() {
+        synchronized (legacyCreateGameFeeder) {
+            return legacyCreateGameFeeder.next();
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> pooledCreateGame() {
+        return createGameFeeder.next();
+    }
+}
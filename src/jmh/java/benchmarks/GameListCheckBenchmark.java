@@ -0,0 +1,111 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.burt.jmespath.Expression;
+import io.burt.jmespath.jackson.JacksonRuntime;
+import io.gatling.javaapi.core.Session;
+import io.gatling.jsonpath.JsonPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import videogamedb.scriptfundamentals.GameListCheck;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU per "Get all games" response: the former JSONPath/JMESPath checks (one Jackson tree shared by all checks,
+ * as Gatling caches it per response, then one query per check) against the single streaming pass of GameListCheck.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameListCheckBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JacksonRuntime JMES_PATH = new JacksonRuntime();
+
+    @Param({"10", "1000", "10000"})
+    private int gameCount;
+
+    private byte[] body;
+    private Session session;
+    private GameListCheck check;
+    private List<JsonPath> jsonPaths;
+    private List<Expression<JsonNode>> jmesPaths;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Map<String, Object>> games = new ArrayList<>();
+        games.add(game(1, "Resident Evil 4", "Shooter", 85));
+        games.add(game(3, "Tetris", "Puzzle", 88));
+        games.add(game(6, "Doom", "Shooter", 81));
+        games.add(game(7, "Minecraft", "Puzzle", 77));
+        games.add(game(9, "Final Fantasy VII", "RPG", 97));
+        for (int id = games.size(); id < gameCount; id++) {
+            games.add(game(1000 + id, "Game " + id, "Category " + id % 10, id % 100));
+        }
+        body = MAPPER.writeValueAsBytes(games);
+        session = Sessions.of(Map.of("gameName", "Doom", "newGameName", "Mario"));
+
+        check = GameListCheck.games()
+                .nameOf(1, "Resident Evil 4")
+                .hasGame("Shooter", "Doom")
+                .containsName("Minecraft")
+                .nameOf(3, "Tetris")
+                .scoreAbove(90, "Final Fantasy VII")
+                .containsSessionValue("gameName", true)
+                .containsSessionValue("newGameName", false);
+
+        jsonPaths = List.of(
+                JsonPath.compile("$[?(@.id==1)].name").toOption().get(),
+                JsonPath.compile("$[?(@.category=='Shooter' && @.name=='Doom')]").toOption().get(),
+                JsonPath.compile("$[*].name").toOption().get(),
+                JsonPath.compile("$[*].name").toOption().get());
+        jmesPaths = List.of(
+                JMES_PATH.compile("[? id == `3`].name"),
+                JMES_PATH.compile("[? reviewScore > `90`].name"),
+                JMES_PATH.compile("contains([? id == `3`].name, 'Tetris')"),
+                JMES_PATH.compile("[*].name"));
+    }
+
+    private static Map<String, Object> game(int id, String name, String category, int reviewScore) {
+        return Map.of("id", id, "name", name, "releaseDate", "2001-04-23 23:59:59",
+                "reviewScore", reviewScore, "category", category, "rating", "Universal");
+    }
+
+    @Benchmark
+    public void treeAndQueries(Blackhole blackhole) throws IOException {
+        JsonNode tree = MAPPER.readTree(body);
+        for (JsonPath jsonPath : jsonPaths) {
+            scala.collection.Iterator<JsonNode> results = jsonPath.query(tree);
+            while (results.hasNext()) {
+                blackhole.consume(results.next());
+            }
+        }
+        for (Expression<JsonNode> jmesPath : jmesPaths) {
+            blackhole.consume(jmesPath.search(tree));
+        }
+    }
+
+    @Benchmark
+    public List<String> singlePass() {
+        return check.violations(body, session);
+    }
+}
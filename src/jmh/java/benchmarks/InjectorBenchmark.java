@@ -0,0 +1,156 @@
+package benchmarks;
+
+import videogamedb.stub.VideoGameDbStubServer;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Requests per second and injector CPU per request of {@link StubThroughputSimulation} with the default JVM and
+ * Gatling settings, then with those of the {@code high-load} Maven profile, against a stub server running in this JVM.
+ * <p>
+ * Each setup runs in its own injector JVM. Throughput is counted by the stub, CPU is the injector process' CPU time,
+ * both over the same window: from 5 seconds after the main load starts (after the warm-up of the tuned setup) to
+ * 2 seconds before it ends.
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmarks.InjectorBenchmark
+ * </pre>
+ * Parameters: {@code USERS} (default 200), {@code TEST_DURATION} (seconds of main load, default 60),
+ * {@code highload.heap} (default 2g) and {@code highload.warmUpDuration} (seconds, default 20).
+ */
+public final class InjectorBenchmark {
+
+    private static final long SETTLE_MILLIS = 5_000;
+    private static final long TAIL_MILLIS = 2_000;
+    private static final long SAMPLE_MILLIS = 100;
+    // a java @argfile, read by the forked injector JVM like by the one of the high-load profile
+    private static final String HIGH_LOAD_JVM_OPTS = "high-load.jvmopts";
+
+    private static final List<String> DEFAULT_JVM_ARGS = List.of(
+            "--add-opens=java.base/java.lang=ALL-UNNAMED",
+            "--add-opens=java.base/java.util=ALL-UNNAMED");
+
+    private record Setup(String name, List<String> jvmArgs, long warmUpMillis) {
+    }
+
+    private record Result(Setup setup, long requests, long windowMillis, Duration cpu) {
+
+        double rps() {
+            return requests * 1000.0 / windowMillis;
+        }
+
+        double cpuMicrosPerRequest() {
+            return requests == 0 ? Double.NaN : cpu.toNanos() / 1000.0 / requests;
+        }
+    }
+
+    private InjectorBenchmark() {
+    }
+
+    // the jvmArgs of the high-load Maven profile: its flags file, with the heap and warm-up of the run
+    private static Setup highLoad(String heap, long warmUpSeconds) throws URISyntaxException {
+        URL flags = requireNonNull(InjectorBenchmark.class.getClassLoader().getResource(HIGH_LOAD_JVM_OPTS),
+                "Couldn't locate " + HIGH_LOAD_JVM_OPTS);
+        List<String> jvmArgs = new ArrayList<>(DEFAULT_JVM_ARGS);
+        jvmArgs.addAll(List.of(
+                "-Xms" + heap,
+                "-Xmx" + heap,
+                "@" + Path.of(flags.toURI()),
+                "-DWARM_UP_DURATION=" + warmUpSeconds));
+        return new Setup("high-load", jvmArgs, TimeUnit.SECONDS.toMillis(warmUpSeconds));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.parseInt(System.getProperty("USERS", "200"));
+        long durationSeconds = Long.parseLong(System.getProperty("TEST_DURATION", "60"));
+        if (TimeUnit.SECONDS.toMillis(durationSeconds) <= SETTLE_MILLIS + TAIL_MILLIS) {
+            throw new IllegalArgumentException("TEST_DURATION must be longer than the 7 s left out of the measurement");
+        }
+        List<Setup> setups = List.of(
+                new Setup("default", DEFAULT_JVM_ARGS, 0),
+                highLoad(System.getProperty("highload.heap", "2g"),
+                        Long.parseLong(System.getProperty("highload.warmUpDuration", "20"))));
+
+        VideoGameDbStubServer stub = new VideoGameDbStubServer(0, 0, 0.0, false);
+        stub.start();
+        Path resultsFolder = Files.createDirectories(Paths.get("target", "injector-benchmark"));
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Setup setup : setups) {
+                System.out.printf("Running %s setup: %d users for %d s%n", setup.name(), users, durationSeconds);
+                results.add(run(setup, stub, users, durationSeconds, resultsFolder));
+            }
+        } finally {
+            stub.stop();
+        }
+
+        System.out.printf("%n%-10s | %10s | %10s | %22s%n", "Setup", "Requests", "RPS", "Injector CPU / request");
+        for (Result result : results) {
+            System.out.printf("%-10s | %10d | %10.0f | %19.1f us%n", result.setup().name(), result.requests(),
+                    result.rps(), result.cpuMicrosPerRequest());
+        }
+    }
+
+    private static Result run(Setup setup, VideoGameDbStubServer stub, int users, long durationSeconds,
+                              Path resultsFolder) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(setup.jvmArgs());
+        command.add("-DBASE_URL=" + stub.baseUrl());
+        command.add("-DUSERS=" + users);
+        command.add("-DTEST_DURATION=" + durationSeconds);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("io.gatling.app.Gatling");
+        command.addAll(List.of(
+                "--simulation", StubThroughputSimulation.class.getName(),
+                "--results-folder", resultsFolder.resolve(setup.name()).toString(),
+                "--no-reports"));
+        Process injector = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(resultsFolder.resolve(setup.name() + ".out").toFile())
+                .start();
+
+        long baseline = stub.requestCount();
+        long firstRequest = 0;
+        long windowStart = 0;
+        long startRequests = 0;
+        Duration startCpu = Duration.ZERO;
+        while (injector.isAlive()) {
+            long now = System.currentTimeMillis();
+            if (firstRequest == 0 && stub.requestCount() > baseline) {
+                firstRequest = now;
+            }
+            long mainLoad = firstRequest + setup.warmUpMillis();
+            if (firstRequest != 0 && windowStart == 0 && now >= mainLoad + SETTLE_MILLIS) {
+                windowStart = now;
+                startRequests = stub.requestCount();
+                startCpu = cpu(injector);
+            }
+            if (windowStart != 0 && now >= mainLoad + TimeUnit.SECONDS.toMillis(durationSeconds) - TAIL_MILLIS) {
+                Result result = new Result(setup, stub.requestCount() - startRequests, now - windowStart,
+                        cpu(injector).minus(startCpu));
+                injector.waitFor();
+                return result;
+            }
+            Thread.sleep(SAMPLE_MILLIS);
+        }
+        throw new IllegalStateException("The %s injector exited with status %d before the end of the measurement, see %s"
+                .formatted(setup.name(), injector.exitValue(), resultsFolder.resolve(setup.name() + ".out")));
+    }
+
+    private static Duration cpu(Process process) {
+        return process.info().totalCpuDuration()
+                .orElseThrow(() -> new IllegalStateException("CPU time of the injector process is not available"));
+    }
+}
@@ -0,0 +1,186 @@
+package benchmarks;
+
+import io.gatling.commons.util.GatlingVersion;
+import videogamedb.reporting.StreamingReport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Time to report against log size: {@link StreamingReport} next to Gatling's own {@code --reports-only}, each in a
+ * fresh JVM, on synthetic {@code simulation.log} files of {@code REPORT_SIZES_MB}.
+ * <p>
+ * The logs mimic a soak of {@code VideoGameDbFullTest}: users arriving at a steady rate, each sending the five
+ * requests of its journey with lognormal-ish response times and 0.5% KOs, written in Gatling 3.14's format. They are
+ * generated once under {@code target/report-benchmark} and kept for later runs.
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmarks.ReportBenchmark
+ * </pre>
+ * Parameters: {@code REPORT_SIZES_MB} (default {@code 64,256,1024}), {@code REPORT_HEAP} (heap of the streaming
+ * report JVM, default 256m), {@code GATLING_MAX_MB} (largest log given to Gatling, whose report needs a heap in
+ * proportion to the log, default 256) and {@code GATLING_HEAP} (default 4g).
+ */
+public final class ReportBenchmark {
+
+    private static final String SIMULATION = "videogamedb.finalsimulation.VideoGameDbFullTest";
+    private static final String[] REQUESTS = {
+            "Get all video games", "Create new game", "Get last posted game", "Delete last posted game",
+            "Authenticate"};
+    private static final long[] MEDIAN_MILLIS = {40, 90, 25, 60, 120};
+    private static final int USERS_PER_SECOND = 50;
+
+    private record Result(long sizeMb, long streamingMillis, long gatlingMillis) {
+    }
+
+    private ReportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = Arrays.stream(System.getProperty("REPORT_SIZES_MB", "64,256,1024").split(","))
+                .mapToLong(size -> Long.parseLong(size.trim()))
+                .toArray();
+        String reportHeap = System.getProperty("REPORT_HEAP", "256m");
+        long gatlingMaxMb = Long.parseLong(System.getProperty("GATLING_MAX_MB", "256"));
+        String gatlingHeap = System.getProperty("GATLING_HEAP", "4g");
+        Path root = Files.createDirectories(Paths.get("target", "report-benchmark"));
+
+        List<Result> results = new ArrayList<>();
+        for (long sizeMb : sizes) {
+            Path resultsFolder = root.resolve(sizeMb + "mb");
+            Path run = resultsFolder.resolve("run");
+            Path log = run.resolve("simulation.log");
+            if (!Files.isRegularFile(log) || Files.size(log) < sizeMb << 20) {
+                System.out.printf("Generating a %d MB log%n", sizeMb);
+                Files.createDirectories(run);
+                generate(log, sizeMb << 20);
+            }
+            System.out.printf("Reporting on the %d MB log%n", sizeMb);
+            long streaming = time(List.of("-Xmx" + reportHeap, "-DREPORT_RUN=" + run), StreamingReport.class.getName(),
+                    List.of(), root.resolve(sizeMb + "mb-streaming.out"));
+            long gatling = sizeMb > gatlingMaxMb ? -1 : time(List.of("-Xmx" + gatlingHeap,
+                            "--add-opens=java.base/java.lang=ALL-UNNAMED", "--add-opens=java.base/java.util=ALL-UNNAMED"),
+                    "io.gatling.app.Gatling",
+                    List.of("--reports-only", "run", "--results-folder", resultsFolder.toString()),
+                    root.resolve(sizeMb + "mb-gatling.out"));
+            results.add(new Result(sizeMb, streaming, gatling));
+        }
+
+        System.out.printf("%n%8s | %16s | %10s | %16s%n", "Log", "Streaming report", "MB/s",
+                "Gatling report");
+        for (Result result : results) {
+            System.out.printf("%5d MB | %14.1f s | %10.0f | %16s%n", result.sizeMb(), result.streamingMillis() / 1000.0,
+                    result.sizeMb() * 1000.0 / result.streamingMillis(),
+                    result.gatlingMillis() < 0 ? "skipped" : "%.1f s".formatted(result.gatlingMillis() / 1000.0));
+        }
+    }
+
+    // wall-clock time of a fresh JVM, startup included for both reports alike
+    private static long time(List<String> jvmArgs, String mainClass, List<String> args, Path output)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(args);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+        int status = process.waitFor();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (status != 0) {
+            throw new IllegalStateException("%s exited with status %d, see %s".formatted(mainClass, status, output));
+        }
+        return millis;
+    }
+
+    private static void generate(Path log, long bytes) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(log), 1 << 16))) {
+            out.writeByte(0);
+            writeText(out, GatlingVersion.ThisVersion().fullVersion());
+            writeText(out, SIMULATION);
+            out.writeLong(System.currentTimeMillis());
+            writeText(out, "");
+            out.writeInt(1);
+            writeText(out, "Video Game Db - Section 8 code");
+            out.writeInt(0);
+
+            boolean[] cached = new boolean[REQUESTS.length + 1];
+            long user = 0;
+            // DataOutputStream counts up to 2 GB only
+            long written = 0;
+            while (written < bytes) {
+                int start = (int) (user * 1000 / USERS_PER_SECOND);
+                out.writeByte(2);
+                out.writeInt(0);
+                out.writeBoolean(true);
+                out.writeInt(start);
+                int time = start;
+                for (int request = 0; request < REQUESTS.length; request++) {
+                    long millis = Math.max(1, Math.round(MEDIAN_MILLIS[request] * Math.exp(random.nextGaussian() * 0.5)));
+                    boolean ok = random.nextInt(200) != 0;
+                    out.writeByte(1);
+                    out.writeInt(0);
+                    writeCachedText(out, request + 1, REQUESTS[request], cached);
+                    out.writeInt(time);
+                    out.writeInt((int) (time + millis));
+                    out.writeBoolean(ok);
+                    if (ok) {
+                        writeCachedText(out, 0, "", cached);
+                    } else {
+                        writeCachedText(out, REQUESTS.length + 1, "status.find.in(200,201), but actually found 500",
+                                cached);
+                    }
+                    time += (int) millis + 1000 + random.nextInt(2000);
+                }
+                out.writeByte(2);
+                out.writeInt(0);
+                out.writeBoolean(false);
+                out.writeInt(time);
+                user++;
+                if (user % 10_000 == 0) {
+                    out.flush();
+                    written = Files.size(log);
+                }
+            }
+        }
+    }
+
+    // index 0 is the empty string, which Gatling writes as a zero-length text every time
+    private static void writeCachedText(DataOutputStream out, int index, String text, boolean[] cached) throws IOException {
+        if (index == 0) {
+            out.writeInt(0);
+            out.writeInt(0);
+            return;
+        }
+        if (cached[index - 1]) {
+            out.writeInt(-index);
+            return;
+        }
+        cached[index - 1] = true;
+        out.writeInt(index);
+        writeText(out, text);
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        out.writeInt(bytes.length);
+        if (bytes.length > 0) {
+            out.write(bytes);
+            out.writeByte(0);
+        }
+    }
+}
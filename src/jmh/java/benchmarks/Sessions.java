@@ -0,0 +1,30 @@
+package benchmarks;
+
+import io.gatling.commons.stats.OK$;
+import io.gatling.javaapi.core.Session;
+import scala.collection.immutable.List$;
+import scala.collection.immutable.Map$;
+import scala.runtime.BoxedUnit;
+
+import java.util.Map;
+
+/**
+ * Builds Gatling sessions outside a running simulation, for benchmarks of code that reads session attributes.
+ */
+public final class Sessions {
+
+    private Sessions() {
+    }
+
+    public static Session of(Map<String, Object> attributes) {
+        io.gatling.core.session.Session scalaSession = new io.gatling.core.session.Session(
+                "benchmark",
+                1L,
+                Map$.MODULE$.empty(),
+                OK$.MODULE$,
+                List$.MODULE$.empty(),
+                session -> BoxedUnit.UNIT,
+                null);
+        return new Session(scalaSession).setAll(attributes);
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
+
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+/**
+ * Read requests without pauses, so the injector rather than the scenario limits the request rate.
+ * Driven by {@link InjectorBenchmark} against the stub server.
+ */
+public class StubThroughputSimulation extends BaseSimulation {
+
+    private static final HttpProtocolBuilder httpProtocol = buildHttpProtocol();
+
+    // USERS and TEST_DURATION are read by profiles/throughput.conf
+    private static final LoadProfile loadProfile = LoadProfile.fromSystemProperties("throughput");
+
+    private static final ScenarioBuilder scenario = scenario("Stub throughput")
+            .repeat(10).on(
+                    exec(http("Get all video games")
+                            .get(VIDEO_GAME_ENDPOINT.getName())),
+                    exec(http("Get specific game")
+                            .get(randomGamePath())));
+
+    public StubThroughputSimulation() {
+        setUp(scenario, loadProfile).protocols(httpProtocol);
+    }
+}
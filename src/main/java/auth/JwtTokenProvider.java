@@ -0,0 +1,172 @@
+package auth;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide JWT provider: logs in once, shares the token between all virtual users
+ * and refreshes it in the background shortly before the {@code exp} claim is reached.
+ */
+public class JwtTokenProvider implements AutoCloseable {
+
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern EXP_PATTERN = Pattern.compile("\"exp\"\\s*:\\s*(\\d+)");
+
+    private static final Duration DEFAULT_REFRESH_SKEW = Duration.ofSeconds(30);
+    // used when the token carries no exp claim
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(10);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final URI authenticateUri;
+    private final String authBody;
+    private final Duration refreshSkew;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService refresher;
+
+    private volatile String token;
+    // the one pending refresh, replaced whenever a refresh is scheduled; guarded by this
+    private ScheduledFuture<?> scheduledRefresh;
+    // why the last login failed, until one succeeds; guarded by this
+    private IOException lastFailure;
+
+    public JwtTokenProvider(URI authenticateUri, String authBody) {
+        this(authenticateUri, authBody, DEFAULT_REFRESH_SKEW);
+    }
+
+    public JwtTokenProvider(URI authenticateUri, String authBody, Duration refreshSkew) {
+        this.authenticateUri = authenticateUri;
+        this.authBody = authBody;
+        this.refreshSkew = refreshSkew;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the shared token. Only the very first caller blocks on the login call, callers arriving meanwhile wait
+     * for it and everybody else reads the cached value. Once the first login has failed, callers fail fast until the
+     * background retry gets a token, instead of each logging in.
+     */
+    public String currentToken() {
+        String current = token;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (token == null) {
+                if (lastFailure != null) {
+                    throw new IllegalStateException("Could not authenticate against " + authenticateUri
+                            + ", retrying every " + RETRY_DELAY.toSeconds() + " s", lastFailure);
+                }
+                refresh();
+            }
+            return token;
+        }
+    }
+
+    private synchronized void refresh() {
+        try {
+            token = fetchToken();
+            lastFailure = null;
+            scheduleRefresh(untilRefresh(token));
+        } catch (IOException e) {
+            lastFailure = e;
+            scheduleRefresh(RETRY_DELAY);
+            if (token == null) {
+                throw new IllegalStateException("Could not authenticate against " + authenticateUri, e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while authenticating against " + authenticateUri, e);
+        }
+    }
+
+    private String fetchToken() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(authenticateUri)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(authBody))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Authentication failed with status " + response.statusCode());
+        }
+        Matcher matcher = TOKEN_PATTERN.matcher(response.body());
+        if (!matcher.find()) {
+            throw new IOException("No token in authentication response: " + response.body());
+        }
+        return matcher.group(1);
+    }
+
+    // a token living less than the skew, or already expired, is replaced after RETRY_DELAY rather than right away, so
+    // a login server with a clock behind ours can't make the refresher spin
+    private Duration untilRefresh(String jwt) {
+        return decodeExpiry(jwt)
+                .map(expiry -> Duration.between(Instant.now(), expiry).minus(refreshSkew))
+                .map(delay -> delay.isNegative() ? RETRY_DELAY : delay)
+                .orElse(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    private synchronized void scheduleRefresh(Duration delay) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (!refresher.isShutdown()) {
+            scheduledRefresh = refresher.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // failures are kept in lastFailure and retried by refresh itself, nothing to report to the executor
+    private void backgroundRefresh() {
+        try {
+            refresh();
+        } catch (IllegalStateException e) {
+            // the next attempt is scheduled already
+        }
+    }
+
+    /**
+     * Reads the {@code exp} claim (seconds since epoch) from the JWT payload without verifying the signature.
+     */
+    public static Optional<Instant> decodeExpiry(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2) {
+            return Optional.empty();
+        }
+        String payload;
+        try {
+            payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        Matcher matcher = EXP_PATTERN.matcher(payload);
+        return matcher.find()
+                ? Optional.of(Instant.ofEpochSecond(Long.parseLong(matcher.group(1))))
+                : Optional.empty();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
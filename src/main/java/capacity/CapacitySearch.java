@@ -0,0 +1,334 @@
+package capacity;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the highest request rate each endpoint sustains within an SLO, one endpoint after the other. The rate starts
+ * at {@code startRps} and is multiplied by {@code growth} for every level that meets the SLO; after the first level
+ * that misses it, the search bisects between the last passing and the first failing rate until they are within
+ * {@code precision} of each other. The last passing rate is the endpoint's maximum sustainable rate. An endpoint whose
+ * first level already misses the SLO isn't searched below {@code startRps}: it is reported with a maximum sustainable
+ * rate of 0, {@link Result#belowStart()}, and the search goes on with the next endpoint.
+ * <p>
+ * Virtual users don't set the rate, the search does: users ask {@link #claim} for the next request slot, at most
+ * {@link #IDLE_WAIT} ahead of time, and wait until it is due. Latency is measured from the slot, not from when the
+ * request went out, so a backed-up target or too few users show up as latency instead of silently lowering the rate.
+ * Each level runs for {@code settle} before it is measured, so requests of the previous level and warm-up don't
+ * count. The requests due during the measured part that haven't completed {@code grace} after it (twice the SLO p99,
+ * one second at least) count with a latency of {@code grace}. A level meets the SLO when its p99 and its error rate
+ * are within it.
+ * <p>
+ * Runtime parameters: {@code SLO_P99} (milliseconds, default 500), {@code SLO_ERROR_RATE} (default 0.01),
+ * {@code CAPACITY_START_RPS} (default 5), {@code CAPACITY_GROWTH} (default 2), {@code CAPACITY_MAX_RPS} (default 1000),
+ * {@code CAPACITY_PRECISION} (default 0.1), {@code CAPACITY_LEVEL_DURATION} (seconds measured per level, default 10),
+ * {@code CAPACITY_SETTLE} (seconds, default 2).
+ */
+public final class CapacitySearch {
+
+    /**
+     * How long users wait when {@link #claim} has no slot for them.
+     */
+    public static final Duration IDLE_WAIT = Duration.ofMillis(20);
+
+    private static final long CLAIM_AHEAD_NANOS = IDLE_WAIT.toNanos() * 2;
+    private static final long MIN_GRACE_MILLIS = 1000;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final long MAX_LATENCY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * When a user sends its next request: to {@code endpoint} at {@code dueNanos} ({@link System#nanoTime}).
+     */
+    public record Slot(String endpoint, long dueNanos) {
+    }
+
+    public record Slo(double p99Millis, double maxErrorRate) {
+    }
+
+    public record Level(double targetRps, double achievedRps, long p99Millis, double errorRate, boolean passed) {
+    }
+
+    /**
+     * Outcome for one endpoint; {@code capped} when even {@code maxRps} met the SLO, {@code belowStart} when not even
+     * {@code startRps} did.
+     */
+    public record Result(String endpoint, double maxSustainableRps, boolean capped, boolean belowStart,
+                         List<Level> levels) {
+    }
+
+    private final List<String> endpoints;
+    private final Slo slo;
+    private final double startRps;
+    private final double growth;
+    private final double maxRps;
+    private final double precision;
+    private final Duration levelDuration;
+    private final Duration settle;
+    private final Duration grace;
+    private final List<Result> results = new ArrayList<>();
+    private final AtomicLong nextDueNanos = new AtomicLong();
+    private final Recorder latencies = new Recorder(MAX_LATENCY_MILLIS, SIGNIFICANT_DIGITS);
+    private final LongAdder errors = new LongAdder();
+    private volatile String endpoint;
+    private volatile long intervalNanos;
+    // requests due in [windowStart, windowEnd) are measured
+    private volatile long windowStart;
+    private volatile long windowEnd;
+    private volatile boolean running = true;
+    private Thread controller;
+
+    private CapacitySearch(List<String> endpoints, Slo slo, double startRps, double growth, double maxRps,
+                           double precision, Duration levelDuration, Duration settle) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No endpoint to search the capacity of");
+        }
+        if (startRps <= 0 || growth <= 1 || maxRps < startRps || precision <= 0) {
+            throw new IllegalArgumentException("Capacity search needs 0 < CAPACITY_START_RPS <= CAPACITY_MAX_RPS, "
+                    + "CAPACITY_GROWTH > 1 and CAPACITY_PRECISION > 0");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.slo = slo;
+        this.startRps = startRps;
+        this.growth = growth;
+        this.maxRps = maxRps;
+        this.precision = precision;
+        this.levelDuration = levelDuration;
+        this.settle = settle;
+        this.grace = Duration.ofMillis(Math.max(MIN_GRACE_MILLIS, (long) (2 * slo.p99Millis())));
+    }
+
+    public static CapacitySearch fromSystemProperties(List<String> endpoints) {
+        return new CapacitySearch(endpoints,
+                new Slo(Double.parseDouble(System.getProperty("SLO_P99", "500")),
+                        Double.parseDouble(System.getProperty("SLO_ERROR_RATE", "0.01"))),
+                Double.parseDouble(System.getProperty("CAPACITY_START_RPS", "5")),
+                Double.parseDouble(System.getProperty("CAPACITY_GROWTH", "2")),
+                Double.parseDouble(System.getProperty("CAPACITY_MAX_RPS", "1000")),
+                Double.parseDouble(System.getProperty("CAPACITY_PRECISION", "0.1")),
+                Duration.ofSeconds(Long.parseLong(System.getProperty("CAPACITY_LEVEL_DURATION", "10"))),
+                Duration.ofSeconds(Long.parseLong(System.getProperty("CAPACITY_SETTLE", "2"))));
+    }
+
+    /**
+     * Upper bound of the search's duration, for the simulation's maximum duration.
+     */
+    public Duration maxDuration() {
+        int growing = (int) Math.ceil(Math.log(maxRps / startRps) / Math.log(growth)) + 1;
+        int bisecting = (int) Math.ceil(Math.log(1 / precision) / Math.log(2)) + 1;
+        return levelDuration.plus(settle).plus(grace).multipliedBy((long) endpoints.size() * (growing + bisecting));
+    }
+
+    public void start() {
+        controller = Thread.ofPlatform().name("capacity-search").daemon().start(this::search);
+    }
+
+    public boolean running() {
+        return running;
+    }
+
+    /**
+     * The next request slot, or null when none is due soon: between endpoints, or while enough users wait for theirs.
+     */
+    public Slot claim() {
+        String current = endpoint;
+        if (current == null) {
+            return null;
+        }
+        long interval = intervalNanos;
+        long now = System.nanoTime();
+        while (true) {
+            // slots keep their schedule when every user is busy, the backlog then shows as latency
+            long due = nextDueNanos.get();
+            if (due - now > CLAIM_AHEAD_NANOS) {
+                return null;
+            }
+            if (nextDueNanos.compareAndSet(due, due + interval)) {
+                return new Slot(current, due);
+            }
+        }
+    }
+
+    /**
+     * Time to wait until {@code slot} is due.
+     */
+    public static Duration delay(Slot slot) {
+        return Duration.ofNanos(Math.max(0, slot.dueNanos() - System.nanoTime()));
+    }
+
+    /**
+     * Records the completion of the request sent for {@code slot}.
+     */
+    public void record(Slot slot, boolean ok) {
+        if (slot.dueNanos() - windowStart < 0 || slot.dueNanos() - windowEnd >= 0) {
+            return;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - slot.dueNanos());
+        latencies.recordValue(Math.min(millis, MAX_LATENCY_MILLIS));
+        if (!ok) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Waits for the search to end, for {@code timeout} at most, and returns the results so far.
+     */
+    public List<Result> results(Duration timeout) {
+        if (controller != null) {
+            try {
+                controller.join(timeout.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (results) {
+            return List.copyOf(results);
+        }
+    }
+
+    private void search() {
+        try {
+            for (String name : endpoints) {
+                Result result = search(name);
+                synchronized (results) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endpoint = null;
+            running = false;
+        }
+    }
+
+    private Result search(String name) throws InterruptedException {
+        List<Level> levels = new ArrayList<>();
+        double passing = 0;
+        double failing = Double.NaN;
+        double rate = startRps;
+        while (Double.isNaN(failing)) {
+            Level level = runLevel(name, rate);
+            levels.add(level);
+            if (!level.passed()) {
+                failing = rate;
+            } else if (rate >= maxRps) {
+                stopTraffic();
+                return new Result(name, rate, true, false, levels);
+            } else {
+                passing = rate;
+                rate = Math.min(maxRps, rate * growth);
+            }
+        }
+        // bisecting from 0 would never get within precision of the failing rate
+        if (failing <= startRps) {
+            stopTraffic();
+            return new Result(name, 0, false, true, levels);
+        }
+        while (failing - passing > precision * failing) {
+            double middle = (passing + failing) / 2;
+            Level level = runLevel(name, middle);
+            levels.add(level);
+            if (level.passed()) {
+                passing = middle;
+            } else {
+                failing = middle;
+            }
+        }
+        stopTraffic();
+        return new Result(name, passing, false, false, levels);
+    }
+
+    private Level runLevel(String name, double rps) throws InterruptedException {
+        long interval = (long) (1_000_000_000L / rps);
+        long start = System.nanoTime();
+        // slots claimed ahead for the previous level are due before the window, whatever the settle time
+        windowStart = start + Math.max(settle.toNanos(), CLAIM_AHEAD_NANOS);
+        windowEnd = windowStart + levelDuration.toNanos();
+        latencies.reset();
+        errors.reset();
+        intervalNanos = interval;
+        nextDueNanos.set(start);
+        endpoint = name;
+        TimeUnit.NANOSECONDS.sleep(windowEnd - System.nanoTime() + grace.toNanos());
+
+        Histogram histogram = latencies.getIntervalHistogram();
+        long failed = errors.sum();
+        long completed = histogram.getTotalCount();
+        // slots are due at start + k * interval, these are the ones due within the window
+        long expected = Math.ceilDiv(windowEnd - start, interval) - Math.ceilDiv(windowStart - start, interval);
+        if (expected > completed) {
+            histogram.recordValueWithCount(grace.toMillis(), expected - completed);
+        }
+        double achieved = completed / (levelDuration.toNanos() / 1e9);
+        long p99 = histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(99);
+        double errorRate = completed == 0 ? 0 : (double) failed / completed;
+        boolean passed = completed > 0 && p99 <= slo.p99Millis() && errorRate <= slo.maxErrorRate();
+        System.out.printf(Locale.ROOT, "Capacity %s at %.1f rps: %.1f rps done, p99 %d ms, %.2f %% errors, %s%n",
+                name, rps, achieved, p99, 100 * errorRate, passed ? "pass" : "fail");
+        return new Level(rps, achieved, p99, errorRate, passed);
+    }
+
+    private void stopTraffic() {
+        endpoint = null;
+    }
+
+    /**
+     * The results as a JSON document: the SLO, then per endpoint its maximum sustainable rate and the levels tried.
+     */
+    public String toJson(List<Result> results) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"finishedAt\": \"").append(Instant.now()).append("\",\n");
+        json.append(String.format(Locale.ROOT, "  \"slo\": {\"p99Millis\": %s, \"maxErrorRate\": %s},%n",
+                number(slo.p99Millis()), number(slo.maxErrorRate())));
+        json.append("  \"endpoints\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT,
+                    "    {\"endpoint\": \"%s\", \"maxSustainableRps\": %s, \"capped\": %s, \"belowStart\": %s, \"levels\": [",
+                    escape(result.endpoint()), number(result.maxSustainableRps()), result.capped(),
+                    result.belowStart()));
+            for (int j = 0; j < result.levels().size(); j++) {
+                Level level = result.levels().get(j);
+                json.append(j == 0 ? "\n" : ",\n").append(String.format(Locale.ROOT,
+                        "      {\"targetRps\": %s, \"achievedRps\": %s, \"p99Millis\": %d, \"errorRate\": %s, \"passed\": %s}",
+                        number(level.targetRps()), number(level.achievedRps()), level.p99Millis(),
+                        number(level.errorRate()), level.passed()));
+            }
+            json.append("\n    ]}");
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    public void writeJson(List<Result> results, Path file) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, toJson(results));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the capacity search result to " + file, e);
+        }
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.4f", value).replaceAll("\\.?0+$", "");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
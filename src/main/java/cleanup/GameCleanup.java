@@ -0,0 +1,195 @@
+package cleanup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Deletes the games created during a run off the measured path. Virtual users only queue the id, which never blocks;
+ * the deletes go out in batches of concurrent requests, {@code rate} per second at most, on a thread of their own, so
+ * they neither appear in the report nor compete with the measured requests for the injector's connections.
+ * <p>
+ * In {@code BACKGROUND} mode the queue is drained during the run, and {@link #drain} deletes whatever is left when the
+ * run ends. In {@code AFTER} mode everything is deleted by {@link #drain}. Users queue a game as soon as it is
+ * created, so games of users cut short by the end of the run are deleted too. A 404 means the game is already gone
+ * and counts as deleted.
+ * <p>
+ * Runtime parameters: {@code CLEANUP} ({@code background}, {@code after} or {@code inline} to leave the deletes to the
+ * scenario, default background), {@code CLEANUP_RATE} (deletes per second, default 50), {@code CLEANUP_BATCH_SIZE}
+ * (deletes in flight, default 10), {@code CLEANUP_TIMEOUT} (seconds {@link #drain} may take, default 60).
+ */
+public final class GameCleanup {
+
+    public enum Mode {
+        INLINE, BACKGROUND, AFTER;
+
+        public static Mode parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Mode mode;
+    private final URI gamesUri;
+    private final Supplier<String> authorization;
+    private final double ratePerSecond;
+    private final int batchSize;
+    private final Duration drainTimeout;
+    private final Queue<Long> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile HttpClient httpClient;
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    private GameCleanup(Mode mode, URI gamesUri, Supplier<String> authorization, double ratePerSecond, int batchSize,
+                        Duration drainTimeout) {
+        this.mode = mode;
+        this.gamesUri = gamesUri;
+        this.authorization = authorization;
+        this.ratePerSecond = ratePerSecond;
+        this.batchSize = Math.max(1, batchSize);
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Cleanup of the games under {@code gamesUri} ({@code .../videogame}), configured from system properties.
+     * {@code authorization} gives the value of the {@code Authorization} header of every delete.
+     */
+    public static GameCleanup fromSystemProperties(URI gamesUri, Supplier<String> authorization) {
+        return new GameCleanup(
+                Mode.parse(System.getProperty("CLEANUP", "background")),
+                gamesUri,
+                authorization,
+                Double.parseDouble(System.getProperty("CLEANUP_RATE", "50")),
+                Integer.parseInt(System.getProperty("CLEANUP_BATCH_SIZE", "10")),
+                Duration.ofSeconds(Long.parseLong(System.getProperty("CLEANUP_TIMEOUT", "60"))));
+    }
+
+    /**
+     * Whether the scenario deletes its games itself, nothing is ever queued then.
+     */
+    public boolean inline() {
+        return mode == Mode.INLINE;
+    }
+
+    /**
+     * Queues a created game for deletion; the background thread starts with the first game.
+     */
+    public void add(long gameId) {
+        if (inline()) {
+            return;
+        }
+        pending.add(gameId);
+        queued.increment();
+        if (mode == Mode.BACKGROUND && started.compareAndSet(false, true)) {
+            running = true;
+            worker = Thread.ofPlatform().name("game-cleanup").daemon().start(this::deleteLoop);
+        }
+    }
+
+    /**
+     * Stops the background deletes and deletes the games still queued, for {@code CLEANUP_TIMEOUT} at most.
+     * Returns a one-line summary, or null when no game was queued.
+     */
+    public String drain() {
+        if (queued.sum() == 0) {
+            return null;
+        }
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        running = false;
+        Thread current = worker;
+        if (current != null) {
+            try {
+                current.join(drainTimeout.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            deleteBatch();
+        }
+        return "Cleanup: %d games queued, %d deleted, %d failed, %d left".formatted(
+                queued.sum(), deleted.sum(), failed.sum(), pending.size());
+    }
+
+    private void deleteLoop() {
+        while (running) {
+            if (pending.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            } else {
+                deleteBatch();
+            }
+        }
+    }
+
+    // the batch takes at least batch size / rate seconds, which keeps the deletes under the rate
+    private void deleteBatch() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> deletes = new ArrayList<>(batchSize);
+        Long gameId;
+        while (deletes.size() < batchSize && (gameId = pending.poll()) != null) {
+            deletes.add(delete(gameId));
+        }
+        CompletableFuture.allOf(deletes.toArray(CompletableFuture[]::new)).join();
+        long minimumNanos = (long) (deletes.size() / ratePerSecond * 1_000_000_000L);
+        long remaining = minimumNanos - (System.nanoTime() - start);
+        if (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private CompletableFuture<Void> delete(long gameId) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(gamesUri + "/" + gameId))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Authorization", authorization.get())
+                    .DELETE()
+                    .build();
+        } catch (RuntimeException e) {
+            // no token: the delete fails, the worker keeps going
+            failed.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        return client().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error == null && (response.statusCode() < 300 || response.statusCode() == 404)) {
+                        deleted.increment();
+                    } else {
+                        failed.increment();
+                    }
+                    return null;
+                });
+    }
+
+    private HttpClient client() {
+        HttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+                }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,229 @@
+package debug;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Debug output for virtual-user code that never blocks the calling thread: messages go into a bounded lock-free ring
+ * buffer and a single background thread writes them out. When the buffer is full messages are dropped and counted.
+ * <p>
+ * Only 1 in {@code sampleRate} users is traced, the first user always is, and captured bodies are cut at
+ * {@code bodyLimit} characters. The shared sink is off unless {@code -DDEBUG=true}; when off, nothing is recorded and
+ * no thread is started.
+ * <p>
+ * Runtime parameters: {@code DEBUG} (default false), {@code DEBUG_SAMPLE_RATE} (default 1),
+ * {@code DEBUG_BODY_LIMIT} (characters, default 1024), {@code DEBUG_BUFFER_SIZE} (entries, default 8192),
+ * {@code DEBUG_OUTPUT} (file path, default standard output).
+ */
+public final class DebugSink implements AutoCloseable {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final DebugSink SHARED = fromSystemProperties();
+
+    private final boolean enabled;
+    private final int sampleRate;
+    private final int bodyLimit;
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    // next slot to claim by producers, next slot to read by the writer thread
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean running;
+
+    private record Entry(long timestamp, long userId, String message) {
+    }
+
+    private DebugSink(boolean enabled, int sampleRate, int bodyLimit, int bufferSize, Writer out) {
+        this.enabled = enabled;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.bodyLimit = bodyLimit;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(enabled ? capacity : 0);
+        this.out = out;
+        this.running = enabled;
+        this.writer = enabled ? Thread.ofPlatform().name("debug-sink-writer").daemon().unstarted(this::drainLoop) : null;
+    }
+
+    /**
+     * Sink writing to {@code out} on its own thread.
+     */
+    public static DebugSink create(int sampleRate, int bodyLimit, int bufferSize, Writer out) {
+        DebugSink sink = new DebugSink(true, sampleRate, bodyLimit, bufferSize, out);
+        sink.writer.start();
+        return sink;
+    }
+
+    public static DebugSink disabled() {
+        return new DebugSink(false, 1, 0, 0, null);
+    }
+
+    /**
+     * Sink configured from system properties, once per JVM.
+     */
+    public static DebugSink shared() {
+        return SHARED;
+    }
+
+    private static DebugSink fromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("DEBUG", "false"))) {
+            return disabled();
+        }
+        String output = System.getProperty("DEBUG_OUTPUT");
+        Writer out;
+        try {
+            out = output == null
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open debug output " + output, e);
+        }
+        DebugSink sink = create(
+                Integer.parseInt(System.getProperty("DEBUG_SAMPLE_RATE", "1")),
+                Integer.parseInt(System.getProperty("DEBUG_BODY_LIMIT", "1024")),
+                Integer.parseInt(System.getProperty("DEBUG_BUFFER_SIZE", "8192")),
+                out);
+        Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "debug-sink-shutdown"));
+        return sink;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the virtual user is traced; check it before building a message to keep unsampled users free.
+     */
+    public boolean sampled(long userId) {
+        return enabled && (userId - 1) % sampleRate == 0;
+    }
+
+    /**
+     * Records a message that is not tied to a virtual user, such as run parameters.
+     */
+    public void log(String message) {
+        if (enabled) {
+            offer(new Entry(System.currentTimeMillis(), 0, message));
+        }
+    }
+
+    public void log(long userId, String message) {
+        if (sampled(userId)) {
+            offer(new Entry(System.currentTimeMillis(), userId, message));
+        }
+    }
+
+    /**
+     * Records a request or response body, cut at the configured body limit.
+     */
+    public void body(long userId, String label, String body) {
+        if (!sampled(userId)) {
+            return;
+        }
+        String captured = body == null || body.length() <= bodyLimit
+                ? body
+                : body.substring(0, bodyLimit) + "... (" + (body.length() - bodyLimit) + " more characters)";
+        offer(new Entry(System.currentTimeMillis(), userId, label + ": " + captured));
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    private void offer(Entry entry) {
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+        slots.set((int) slot & mask, entry);
+    }
+
+    private void drainLoop() {
+        while (running || head.get() != tail.get()) {
+            if (!drain()) {
+                flush();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        flush();
+    }
+
+    // single consumer: a claimed slot stays null until its producer has published the entry
+    private boolean drain() {
+        boolean wrote = false;
+        long next = head.get();
+        Entry entry;
+        while ((entry = slots.get((int) next & mask)) != null) {
+            slots.set((int) next & mask, null);
+            head.set(++next);
+            write(entry);
+            wrote = true;
+        }
+        return wrote;
+    }
+
+    private void write(Entry entry) {
+        try {
+            out.write(TIME_FORMAT.format(Instant.ofEpochMilli(entry.timestamp())));
+            if (entry.userId() > 0) {
+                out.write(" [user " + entry.userId() + "]");
+            }
+            out.write(' ');
+            out.write(entry.message());
+            out.write(System.lineSeparator());
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // nothing sensible to report to, the entries are lost
+        }
+    }
+
+    /**
+     * Writes out what is still buffered and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (!enabled || !running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            System.err.println("Debug sink dropped " + dropped.get() + " entries");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package feeders;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Feeder record with a fixed, shared key set whose values are overwritten in place.
+ * A feeder can keep one instance per thread and refill it for every {@code next()} call instead of
+ * allocating a new {@code HashMap}; Gatling copies the entries into the session before the next record is drawn.
+ */
+public class FixedKeyRecord extends AbstractMap<String, Object> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final Slot[] slots;
+    private final Set<Entry<String, Object>> entrySet = new EntrySet();
+
+    public FixedKeyRecord(String... keys) {
+        this.keys = keys.clone();
+        this.values = new Object[keys.length];
+        this.slots = new Slot[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            slots[i] = new Slot(i);
+        }
+    }
+
+    /**
+     * Sets the value of the key at {@code index}, in the order the keys were given to the constructor.
+     */
+    public FixedKeyRecord set(int index, Object value) {
+        values[index] = value;
+        return this;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return entrySet;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < keys.length;
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (next >= keys.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return slots[next++];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+    }
+
+    // entries read the live values, so iterating never allocates one entry per key
+    private final class Slot implements Entry<String, Object> {
+
+        private final int index;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return values[index];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("Use FixedKeyRecord.set(int, Object)");
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry<?, ?> entry
+                    && getKey().equals(entry.getKey())
+                    && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * Snapshot of the current values, for callers that keep a record beyond the next refill.
+     */
+    public Map<String, Object> copy() {
+        return new HashMap<>(this);
+    }
+}
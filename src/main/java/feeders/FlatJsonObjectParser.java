@@ -0,0 +1,183 @@
+package feeders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes one JSON object from a byte buffer into a feeder record. Strings, numbers, booleans and nulls become Java
+ * values, nested objects and arrays are kept as their raw JSON text.
+ */
+final class FlatJsonObjectParser {
+
+    private final byte[] buffer;
+    private final int length;
+    private int position;
+
+    private FlatJsonObjectParser(byte[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    static Map<String, Object> parse(byte[] buffer, int length) {
+        return new FlatJsonObjectParser(buffer, length).object();
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> record = new HashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            return record;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            record.put(key, value());
+            skipWhitespace();
+            byte separator = buffer[position++];
+            if (separator == '}') {
+                return record;
+            }
+            if (separator != ',') {
+                throw error("',' or '}'");
+            }
+        }
+    }
+
+    private Object value() {
+        byte b = peek();
+        return switch (b) {
+            case '"' -> string();
+            case '{', '[' -> rawStructure();
+            case 't' -> literal("true", Boolean.TRUE);
+            case 'f' -> literal("false", Boolean.FALSE);
+            case 'n' -> literal("null", null);
+            default -> number();
+        };
+    }
+
+    private String string() {
+        expect('"');
+        int start = position;
+        StringBuilder escaped = null;
+        while (position < length) {
+            byte b = buffer[position];
+            if (b == '"') {
+                String tail = new String(buffer, start, position - start, StandardCharsets.UTF_8);
+                position++;
+                return escaped == null ? tail : escaped.append(tail).toString();
+            }
+            if (b == '\\') {
+                if (escaped == null) {
+                    escaped = new StringBuilder();
+                }
+                escaped.append(new String(buffer, start, position - start, StandardCharsets.UTF_8));
+                escaped.append(unescape());
+                start = position;
+            } else {
+                position++;
+            }
+        }
+        throw error("closing quote");
+    }
+
+    private char unescape() {
+        position++;
+        byte b = buffer[position++];
+        return switch (b) {
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'u' -> {
+                char c = (char) Integer.parseInt(new String(buffer, position, 4, StandardCharsets.US_ASCII), 16);
+                position += 4;
+                yield c;
+            }
+            default -> (char) b;
+        };
+    }
+
+    private String rawStructure() {
+        int start = position;
+        int depth = 0;
+        boolean inString = false;
+        while (position < length) {
+            byte b = buffer[position++];
+            if (inString) {
+                if (b == '\\') {
+                    position++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return new String(buffer, start, position - start, StandardCharsets.UTF_8);
+            }
+        }
+        throw error("end of nested value");
+    }
+
+    private Object literal(String text, Object value) {
+        for (int i = 0; i < text.length(); i++) {
+            expect(text.charAt(i));
+        }
+        return value;
+    }
+
+    private Object number() {
+        int start = position;
+        boolean decimal = false;
+        while (position < length) {
+            byte b = buffer[position];
+            if (b == '.' || b == 'e' || b == 'E') {
+                decimal = true;
+            } else if (!(b == '-' || b == '+' || (b >= '0' && b <= '9'))) {
+                break;
+            }
+            position++;
+        }
+        String text = new String(buffer, start, position - start, StandardCharsets.US_ASCII);
+        if (text.isEmpty()) {
+            throw error("value");
+        }
+        if (decimal) {
+            return Double.parseDouble(text);
+        }
+        long value = Long.parseLong(text);
+        return value == (int) value ? (Object) (int) value : (Object) value;
+    }
+
+    private void skipWhitespace() {
+        while (position < length && (buffer[position] == ' ' || buffer[position] == '\n'
+                || buffer[position] == '\r' || buffer[position] == '\t')) {
+            position++;
+        }
+    }
+
+    private byte peek() {
+        if (position >= length) {
+            throw error("more input");
+        }
+        return buffer[position];
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error("'" + expected + "'");
+        }
+        position++;
+    }
+
+    private IllegalStateException error(String expected) {
+        return new IllegalStateException("Invalid JSON record, expected " + expected + " at position " + position);
+    }
+}
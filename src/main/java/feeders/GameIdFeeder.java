@@ -0,0 +1,32 @@
+package feeders;
+
+import utils.GameIdGenerator;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Endless, lock-free feeder of {@code gameId} values drawn from a {@link GameIdGenerator}.
+ * Every thread refills its own {@link FixedKeyRecord}, so a record is only valid until the next call on that thread.
+ */
+public class GameIdFeeder implements Iterator<Map<String, Object>> {
+
+    public static final String GAME_ID_KEY = "gameId";
+
+    private final GameIdGenerator generator;
+    private final ThreadLocal<FixedKeyRecord> records = ThreadLocal.withInitial(() -> new FixedKeyRecord(GAME_ID_KEY));
+
+    public GameIdFeeder(GameIdGenerator generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        return records.get().set(0, generator.nextId());
+    }
+}
@@ -0,0 +1,331 @@
+package feeders;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeder over a memory-mapped CSV or JSON array file, for data sets too large for {@code csv(...)} and
+ * {@code jsonFile(...)}, which load every record onto the heap.
+ * <p>
+ * Opening the file maps it and scans it once to build an index of record start offsets (about 4 bytes per record);
+ * a record is only decoded when it is fed. Like Gatling's {@code FeederBuilder}, {@link #queue()} (the default),
+ * {@link #random()} and {@link #circular()} select the strategy, and all of them share the same mapping and index.
+ * <p>
+ * CSV values are strings. JSON records must be objects; strings, numbers, booleans and nulls are decoded, nested
+ * objects and arrays are fed as their raw JSON text. Records are limited to {@link #MAX_RECORD_SIZE} bytes.
+ */
+public final class MappedFileFeeder implements Iterator<Map<String, Object>> {
+
+    public enum Strategy { QUEUE, RANDOM, CIRCULAR }
+
+    public static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final int BLOCK_SHIFT = 10;
+
+    private final Index index;
+    private final Strategy strategy;
+    private final AtomicLong cursor;
+
+    private MappedFileFeeder(Index index, Strategy strategy) {
+        this.index = index;
+        this.strategy = strategy;
+        this.cursor = new AtomicLong();
+    }
+
+    /**
+     * Opens a CSV file with a header line, given as a classpath resource or a file system path.
+     */
+    public static MappedFileFeeder csv(String resourceOrPath) {
+        return new MappedFileFeeder(Index.build(resolve(resourceOrPath), true), Strategy.QUEUE);
+    }
+
+    /**
+     * Opens a JSON file holding one array of objects, given as a classpath resource or a file system path.
+     */
+    public static MappedFileFeeder json(String resourceOrPath) {
+        return new MappedFileFeeder(Index.build(resolve(resourceOrPath), false), Strategy.QUEUE);
+    }
+
+    public MappedFileFeeder queue() {
+        return new MappedFileFeeder(index, Strategy.QUEUE);
+    }
+
+    public MappedFileFeeder random() {
+        return new MappedFileFeeder(index, Strategy.RANDOM);
+    }
+
+    public MappedFileFeeder circular() {
+        return new MappedFileFeeder(index, Strategy.CIRCULAR);
+    }
+
+    public long recordCount() {
+        return index.recordCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index.recordCount > 0 && (strategy != Strategy.QUEUE || cursor.get() < index.recordCount);
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        long record = switch (strategy) {
+            case QUEUE -> cursor.getAndIncrement();
+            case RANDOM -> index.recordCount == 0 ? 0 : ThreadLocalRandom.current().nextLong(index.recordCount);
+            case CIRCULAR -> index.recordCount == 0 ? 0 : Math.floorMod(cursor.getAndIncrement(), index.recordCount);
+        };
+        if (record >= index.recordCount) {
+            throw new NoSuchElementException("Feeder is empty after " + index.recordCount + " records");
+        }
+        return index.read(record);
+    }
+
+    private static Path resolve(String resourceOrPath) {
+        URL resource = MappedFileFeeder.class.getClassLoader().getResource(resourceOrPath);
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid resource " + resourceOrPath, e);
+            }
+        }
+        return Paths.get(resourceOrPath);
+    }
+
+    /**
+     * Mapping plus offset index of one file, shared by every strategy opened on it.
+     * Offsets are stored as one long per block of 1024 records and one int per record relative to its block.
+     */
+    private static final class Index {
+
+        private final MappedByteBuffer[] chunks;
+        private final long size;
+        private final boolean csv;
+        private final String[] header;
+        private final long recordCount;
+        private final long[] blockOffsets;
+        private final int[] relativeOffsets;
+        private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[MAX_RECORD_SIZE]);
+
+        private Index(MappedByteBuffer[] chunks, long size, boolean csv, String[] header,
+                      long recordCount, long[] blockOffsets, int[] relativeOffsets) {
+            this.chunks = chunks;
+            this.size = size;
+            this.csv = csv;
+            this.header = header;
+            this.recordCount = recordCount;
+            this.blockOffsets = blockOffsets;
+            this.relativeOffsets = relativeOffsets;
+        }
+
+        static Index build(Path path, boolean csv) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                int chunkCount = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+                MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+                for (int i = 0; i < chunkCount; i++) {
+                    // a single mapping is limited to 2 GB, larger files are mapped in 1 GB chunks
+                    long start = i * CHUNK_SIZE;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, CHUNK_SIZE));
+                }
+                Index scanned = new Index(chunks, size, csv, null, 0, new long[0], new int[0]);
+                return csv ? scanned.scanCsv() : scanned.scanJson();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map " + path, e);
+            }
+        }
+
+        private byte byteAt(long position) {
+            return chunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE));
+        }
+
+        private Index scanCsv() {
+            OffsetsBuilder offsets = new OffsetsBuilder();
+            boolean headerRead = false;
+            boolean quoted = false;
+            boolean lineStart = true;
+            for (long position = 0; position < size; position++) {
+                byte b = byteAt(position);
+                if (lineStart && b != '\n' && b != '\r') {
+                    lineStart = false;
+                    if (headerRead) {
+                        offsets.add(position);
+                    }
+                }
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    headerRead = true;
+                    lineStart = true;
+                }
+            }
+            return offsets.toIndex(this, parseCsvLine(0, buffers.get()).toArray(String[]::new));
+        }
+
+        private Index scanJson() {
+            OffsetsBuilder offsets = new OffsetsBuilder();
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            for (long position = 0; position < size; position++) {
+                byte b = byteAt(position);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                switch (b) {
+                    case '"' -> inString = true;
+                    case '{', '[' -> {
+                        if (depth == 1 && b == '{') {
+                            offsets.add(position);
+                        }
+                        depth++;
+                    }
+                    case '}', ']' -> depth--;
+                    default -> {
+                    }
+                }
+            }
+            return offsets.toIndex(this, null);
+        }
+
+        private long offsetOf(long record) {
+            return blockOffsets[(int) (record >>> BLOCK_SHIFT)] + relativeOffsets[(int) record];
+        }
+
+        Map<String, Object> read(long record) {
+            byte[] buffer = buffers.get();
+            long start = offsetOf(record);
+            if (csv) {
+                List<String> values = parseCsvLine(start, buffer);
+                FixedKeyRecord result = new FixedKeyRecord(header);
+                for (int i = 0; i < header.length; i++) {
+                    result.set(i, i < values.size() ? values.get(i) : "");
+                }
+                return result;
+            }
+            int length = copyJsonObject(start, buffer);
+            return FlatJsonObjectParser.parse(buffer, length);
+        }
+
+        private List<String> parseCsvLine(long start, byte[] buffer) {
+            List<String> values = new ArrayList<>();
+            int length = 0;
+            boolean quoted = false;
+            long position = start;
+            for (; position < size; position++) {
+                byte b = byteAt(position);
+                if (quoted) {
+                    if (b == '"') {
+                        if (position + 1 < size && byteAt(position + 1) == '"') {
+                            buffer[length++] = '"';
+                            position++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        buffer[length++] = b;
+                    }
+                } else if (b == '"') {
+                    quoted = true;
+                } else if (b == ',') {
+                    values.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+                    length = 0;
+                } else if (b == '\n') {
+                    break;
+                } else if (b != '\r') {
+                    buffer[length++] = b;
+                }
+                if (position - start >= MAX_RECORD_SIZE - 1) {
+                    throw new IllegalStateException("CSV record at offset " + start + " exceeds " + MAX_RECORD_SIZE + " bytes");
+                }
+            }
+            values.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            return values;
+        }
+
+        private int copyJsonObject(long start, byte[] buffer) {
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            int length = 0;
+            for (long position = start; position < size; position++) {
+                if (length == MAX_RECORD_SIZE) {
+                    throw new IllegalStateException("JSON record at offset " + start + " exceeds " + MAX_RECORD_SIZE + " bytes");
+                }
+                byte b = byteAt(position);
+                buffer[length++] = b;
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return length;
+                }
+            }
+            throw new IllegalStateException("Unterminated JSON record at offset " + start);
+        }
+
+        private final class OffsetsBuilder {
+
+            private long[] blocks = new long[16];
+            private int[] relative = new int[1 << 14];
+            private long count;
+
+            void add(long offset) {
+                int block = (int) (count >>> BLOCK_SHIFT);
+                if ((count & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+                    if (block == blocks.length) {
+                        blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                    }
+                    blocks[block] = offset;
+                }
+                if (count == relative.length) {
+                    if (relative.length == Integer.MAX_VALUE - 8) {
+                        throw new IllegalStateException("Too many records, at most " + relative.length + " are supported");
+                    }
+                    relative = Arrays.copyOf(relative, (int) Math.min(Integer.MAX_VALUE - 8L, relative.length * 2L));
+                }
+                relative[(int) count] = (int) (offset - blocks[block]);
+                count++;
+            }
+
+            Index toIndex(Index mapped, String[] header) {
+                return new Index(mapped.chunks, mapped.size, mapped.csv, header, count,
+                        Arrays.copyOf(blocks, (int) ((count >>> BLOCK_SHIFT) + 1)),
+                        Arrays.copyOf(relative, (int) count));
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package feeders;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Endless feeder of random games ({@code name}, {@code releaseDate}, {@code reviewScore}, {@code category},
+ * {@code rating}) for create-game requests.
+ * <p>
+ * All strings are drawn from pools built once at construction, values are picked with {@link ThreadLocalRandom}
+ * and every thread refills its own {@link FixedKeyRecord}, so {@code next()} takes no lock, reads no entropy source
+ * and allocates nothing per record.
+ */
+public class RandomGameFeeder implements Iterator<Map<String, Object>> {
+
+    public static final String NAME_KEY = "name";
+    public static final String RELEASE_DATE_KEY = "releaseDate";
+    public static final String REVIEW_SCORE_KEY = "reviewScore";
+    public static final String CATEGORY_KEY = "category";
+    public static final String RATING_KEY = "rating";
+
+    public static final int DEFAULT_POOL_SIZE = 4096;
+
+    private static final int MAX_REVIEW_SCORE = 100;
+    private static final int HUNDRED_YEARS_IN_DAYS = 100 * 365;
+    private static final String ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    private final String[] names;
+    private final String[] releaseDates;
+    private final String[] categories;
+    private final String[] ratings;
+    private final Integer[] reviewScores;
+    private final ThreadLocal<FixedKeyRecord> records = ThreadLocal.withInitial(() ->
+            new FixedKeyRecord(NAME_KEY, RELEASE_DATE_KEY, REVIEW_SCORE_KEY, CATEGORY_KEY, RATING_KEY));
+
+    public RandomGameFeeder() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    public RandomGameFeeder(int poolSize) {
+        SplittableRandom random = new SplittableRandom();
+        this.names = new String[poolSize];
+        this.releaseDates = new String[poolSize];
+        this.categories = new String[poolSize];
+        this.ratings = new String[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            names[i] = randomAlphanumeric(random, 5) + "-gameName";
+            releaseDates[i] = LocalDate.ofEpochDay(random.nextInt(-HUNDRED_YEARS_IN_DAYS, HUNDRED_YEARS_IN_DAYS)).toString();
+            categories[i] = randomAlphanumeric(random, 5) + "-category";
+            ratings[i] = randomAlphanumeric(random, 4) + "-rating";
+        }
+        this.reviewScores = new Integer[MAX_REVIEW_SCORE];
+        for (int score = 0; score < MAX_REVIEW_SCORE; score++) {
+            reviewScores[score] = score;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true;
+    }
+
+    /**
+     * Returns this thread's record refilled with new values; it is only valid until the next call on the same thread.
+     */
+    @Override
+    public Map<String, Object> next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return records.get()
+                .set(0, names[random.nextInt(names.length)])
+                .set(1, releaseDates[random.nextInt(releaseDates.length)])
+                .set(2, reviewScores[random.nextInt(MAX_REVIEW_SCORE)])
+                .set(3, categories[random.nextInt(categories.length)])
+                .set(4, ratings[random.nextInt(ratings.length)]);
+    }
+
+    private static String randomAlphanumeric(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHANUMERIC.charAt(random.nextInt(ALPHANUMERIC.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,222 @@
+package metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response times corrected for coordinated omission, next to the raw ones. When the target stalls, a virtual user
+ * waiting for a slow response sends its next requests late, and the raw response times of those requests don't show
+ * the time they spent queued behind the stall: the stall is measured once, by the slow request, however many requests
+ * it held back.
+ * <p>
+ * Every user is given a schedule: its injection time plus its pauses, with the usual response time of each request
+ * allowed for it. The usual response time of a request name is its running raw median, recomputed every
+ * {@value #BASELINE_REFRESH} responses, and never less than {@code expectedResponseMillis}; the first
+ * {@value #BASELINE_REFRESH} responses of a request name only establish it and don't move the schedule. A response taking longer
+ * puts the user behind schedule by the excess, a faster one lets it catch up by the difference, down to on schedule.
+ * A target that is slow but steady thus puts nobody behind, only responses slower than usual do, such as those of a
+ * stall. The intended start of a request is its actual start minus how far behind its user is, and its corrected
+ * response time runs from the intended start to the response: the raw time plus the send lag. This modelled schedule
+ * lag comes from responses slower than usual, so it measures the target's slowness, not the injector's. The injector's
+ * own lag is measured apart, as the oversleep of a 10 ms sleep loop (the probe of {@link LiveMetrics}), and reported
+ * next to it.
+ * <p>
+ * Histograms are kept per request name, and for all requests, for the whole run; past 200
+ * distinct names, new names are counted under {@code other}.
+ * <p>
+ * Runtime parameters: {@code CO_CORRECTION} ({@code true} to record, default false), {@code CO_EXPECTED_RESPONSE_TIME}
+ * (milliseconds, the least response time allowed for, default 100), {@code CO_HISTOGRAMS} (folder of the HdrHistogram logs written at the end of the run,
+ * default {@code target/latency}).
+ */
+public final class CorrectedLatencies {
+
+    public static final String OTHER_REQUESTS = "other";
+    public static final String ALL_REQUESTS = "all";
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int MAX_REQUEST_NAMES = 200;
+    private static final int BASELINE_REFRESH = 64;
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final boolean enabled;
+    private final long expectedResponseMillis;
+    private final Path histogramFolder;
+    private final Map<String, Latencies> requests = new ConcurrentHashMap<>();
+    private final Latencies all = new Latencies();
+    private final Histogram scheduleLag = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    // microseconds, milliseconds would round most oversleeps to 0
+    private final Histogram injectorLag = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    // milliseconds each user is behind its schedule, by user id; users only add to their own entry
+    private final Map<Long, Long> behindSchedule = new ConcurrentHashMap<>();
+    private final long startMillis = System.currentTimeMillis();
+
+    private static final class Latencies {
+        private final Histogram raw = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final Histogram corrected = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        // running raw median, refreshed rather than computed per response, a percentile walks the whole histogram;
+        // -1 until the request has BASELINE_REFRESH responses
+        private volatile long medianMillis = -1;
+
+        Histogram raw() {
+            return raw;
+        }
+
+        Histogram corrected() {
+            return corrected;
+        }
+
+        // -1 while too few responses are known to tell what is usual
+        long usualMillis(long floorMillis) {
+            long count = raw.getTotalCount();
+            if (count >= BASELINE_REFRESH && (medianMillis < 0 || count % BASELINE_REFRESH == 0)) {
+                medianMillis = raw.getValueAtPercentile(50);
+            }
+            return medianMillis < 0 ? -1 : Math.max(floorMillis, medianMillis);
+        }
+    }
+
+    private CorrectedLatencies(boolean enabled, long expectedResponseMillis, Path histogramFolder) {
+        this.enabled = enabled;
+        this.expectedResponseMillis = expectedResponseMillis;
+        this.histogramFolder = histogramFolder;
+    }
+
+    public static CorrectedLatencies fromSystemProperties() {
+        CorrectedLatencies latencies = new CorrectedLatencies(
+                Boolean.parseBoolean(System.getProperty("CO_CORRECTION", "false")),
+                Long.parseLong(System.getProperty("CO_EXPECTED_RESPONSE_TIME", "100")),
+                Path.of(System.getProperty("CO_HISTOGRAMS", "target/latency")));
+        if (latencies.enabled) {
+            Thread.ofPlatform().name("co-correction-probe").daemon().start(latencies::probeLoop);
+        }
+        return latencies;
+    }
+
+    // runs until the JVM exits, like the injector it measures
+    private void probeLoop() {
+        while (true) {
+            long before = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(PROBE_INTERVAL_NANOS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            injectorLag.recordValue(TimeUnit.NANOSECONDS.toMicros(
+                    Math.max(0, System.nanoTime() - before - PROBE_INTERVAL_NANOS)));
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Records one response of user {@code userId}; timestamps are epoch milliseconds, as Gatling reports them.
+     * A user's responses come one after the other, never concurrently.
+     */
+    public void recordResponse(long userId, String requestName, long startMillis, long endMillis) {
+        if (!enabled) {
+            return;
+        }
+        long raw = Math.max(0, endMillis - startMillis);
+        long behind = behindSchedule.getOrDefault(userId, 0L);
+        Latencies latencies = requests.get(requestName);
+        if (latencies == null) {
+            latencies = requests.size() < MAX_REQUEST_NAMES
+                    ? requests.computeIfAbsent(requestName, name -> new Latencies())
+                    : requests.computeIfAbsent(OTHER_REQUESTS, name -> new Latencies());
+        }
+        long usual = latencies.usualMillis(expectedResponseMillis);
+        latencies.raw().recordValue(raw);
+        latencies.corrected().recordValue(raw + behind);
+        all.raw().recordValue(raw);
+        all.corrected().recordValue(raw + behind);
+        scheduleLag.recordValue(behind);
+        if (usual < 0) {
+            return;
+        }
+        long stillBehind = Math.max(0, behind + raw - usual);
+        if (stillBehind > 0) {
+            behindSchedule.put(userId, stillBehind);
+        } else if (behind > 0) {
+            behindSchedule.remove(userId);
+        }
+    }
+
+    public void userEnded(long userId) {
+        if (enabled) {
+            behindSchedule.remove(userId);
+        }
+    }
+
+    /**
+     * Raw and corrected percentiles per request name, the modelled schedule lag and the measured injector lag, or null
+     * when nothing was recorded.
+     */
+    public String summary() {
+        if (!enabled || all.raw().getTotalCount() == 0) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder(
+                ("Response times corrected for coordinated omission (ms, responses slower than the median of their request, "
+                        + "%d ms at least, delay the user's next requests):%n").formatted(expectedResponseMillis));
+        report.append(String.format(Locale.ROOT, "  %-40s %8s | %7s %7s %7s | %9s %9s %9s%n",
+                "request", "count", "raw p50", "p99", "max", "corr. p50", "p99", "max"));
+        new TreeMap<>(requests).forEach((name, latencies) -> line(report, name, latencies));
+        line(report, ALL_REQUESTS, all);
+        report.append(String.format(Locale.ROOT,
+                "  modelled schedule lag (target slowness): p50 %d ms, p99 %d ms, max %d ms, "
+                        + "%.1f %% of requests sent late%n",
+                scheduleLag.getValueAtPercentile(50), scheduleLag.getValueAtPercentile(99), scheduleLag.getMaxValue(),
+                100.0 * (scheduleLag.getTotalCount() - scheduleLag.getCountAtValue(0)) / scheduleLag.getTotalCount()));
+        if (injectorLag.getTotalCount() > 0) {
+            report.append(String.format(Locale.ROOT,
+                    "  measured injector lag (oversleep of a 10 ms sleep): p50 %.1f ms, p99 %.1f ms, "
+                            + "max %.1f ms%n",
+                    injectorLag.getValueAtPercentile(50) / 1000.0, injectorLag.getValueAtPercentile(99) / 1000.0,
+                    injectorLag.getMaxValue() / 1000.0));
+        }
+        return report.toString();
+    }
+
+    private static void line(StringBuilder report, String name, Latencies latencies) {
+        Histogram raw = latencies.raw();
+        Histogram corrected = latencies.corrected();
+        report.append(String.format(Locale.ROOT, "  %-40s %8d | %7d %7d %7d | %9d %9d %9d%n",
+                name.length() > 40 ? name.substring(0, 37) + "..." : name, raw.getTotalCount(),
+                raw.getValueAtPercentile(50), raw.getValueAtPercentile(99), raw.getMaxValue(),
+                corrected.getValueAtPercentile(50), corrected.getValueAtPercentile(99), corrected.getMaxValue()));
+    }
+
+    /**
+     * Writes the histograms of the run to {@code <folder>/<run>.hlog}, one raw and one corrected histogram per request
+     * name, tagged {@code raw:<name>} and {@code corrected:<name>} (spaces replaced by underscores), and the modelled
+     * schedule lag tagged {@code schedule-lag}. Returns the file, or null when nothing was recorded.
+     */
+    public Path writeHistograms(String run) {
+        if (!enabled || all.raw().getTotalCount() == 0) {
+            return null;
+        }
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        new TreeMap<>(requests).forEach((name, latencies) -> add(histograms, name, latencies));
+        add(histograms, ALL_REQUESTS, all);
+        histograms.put("schedule-lag", scheduleLag);
+        Path file = histogramFolder.resolve(run + ".hlog");
+        HistogramLogs.write(file, "Response times in milliseconds, raw and corrected for coordinated omission",
+                startMillis, histograms);
+        return file;
+    }
+
+    private static void add(Map<String, Histogram> histograms, String name, Latencies latencies) {
+        histograms.put("raw:" + name, latencies.raw());
+        histograms.put("corrected:" + name, latencies.corrected());
+    }
+}
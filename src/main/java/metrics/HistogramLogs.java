@@ -0,0 +1,51 @@
+package metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * HdrHistogram logs of the latencies recorded over a run, one interval per histogram, readable by
+ * {@code HistogramLogProcessor} and the HdrHistogram plotters.
+ */
+final class HistogramLogs {
+
+    private HistogramLogs() {
+    }
+
+    /**
+     * Writes {@code histograms} to {@code file} in iteration order, each as one interval from {@code startMillis} to
+     * now tagged with its key (spaces and commas replaced by underscores). Values are milliseconds.
+     */
+    static void write(Path file, String comment, long startMillis, Map<String, Histogram> histograms) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            HistogramLogWriter writer = new HistogramLogWriter(file.toFile());
+            try {
+                writer.outputComment(comment);
+                writer.outputLogFormatVersion();
+                writer.outputStartTime(startMillis);
+                writer.outputLegend();
+                double endSeconds = System.currentTimeMillis() / 1000.0;
+                histograms.forEach((tag, histogram) -> {
+                    Histogram copy = histogram.copy();
+                    // tags end at the first space or comma of a log line
+                    copy.setTag(tag.replaceAll("[\\s,]", "_"));
+                    // values are milliseconds already, the log scales its max column from nanoseconds by default
+                    writer.outputIntervalHistogram(startMillis / 1000.0, endSeconds, copy, 1.0);
+                });
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the histograms to " + file, e);
+        }
+    }
+}
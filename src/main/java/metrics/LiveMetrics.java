@@ -0,0 +1,351 @@
+package metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the running simulation, readable while it runs rather than from the report at the end: responses and
+ * latency percentiles per request name, active users per scenario, and injector health (GC, heap, CPU and the lag of
+ * a thread that sleeps in 10 ms steps, which grows with GC pauses, safepoints and CPU starvation). Simulations may
+ * also report the size of their virtual users' sessions, per scenario.
+ * <p>
+ * Latencies go into HdrHistogram recorders, so recording is wait-free for the calling thread. Percentiles cover a
+ * sliding window of {@code windowSeconds}, moved every tenth of it; counts and sums cover the whole run. Past
+ * {@code maxRequestNames} distinct names, new names are counted under {@code other}.
+ * <p>
+ * The shared instance is off unless {@code -DMETRICS_PORT} is set; it then serves {@link #writeOpenMetrics} on
+ * {@code http://METRICS_HOST:METRICS_PORT/metrics} through {@link PrometheusEndpoint}. When off, nothing is recorded
+ * and no thread is started.
+ * <p>
+ * Runtime parameters: {@code METRICS_PORT} (default off), {@code METRICS_HOST} (default 127.0.0.1),
+ * {@code METRICS_WINDOW} (seconds, default 60), {@code METRICS_MAX_REQUEST_NAMES} (default 200).
+ */
+public final class LiveMetrics implements AutoCloseable {
+
+    public static final String OTHER_REQUESTS = "other";
+
+    private static final int WINDOW_STEPS = 10;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+
+    private static final LiveMetrics SHARED = fromSystemProperties();
+
+    private final boolean enabled;
+    private final int maxRequestNames;
+    private final long stepNanos;
+    private final Map<String, RequestMetrics> requests = new ConcurrentHashMap<>();
+    private final Map<String, ScenarioUsers> users = new ConcurrentHashMap<>();
+    private final Map<String, SessionSizes> sessions = new ConcurrentHashMap<>();
+    private final WindowedHistogram schedulerLag = new WindowedHistogram();
+    private final Thread probe;
+    private volatile boolean running;
+    private PrometheusEndpoint endpoint;
+
+    private record ScenarioUsers(LongAdder started, LongAdder ended) {
+    }
+
+    private record SessionSizes(LongAdder samples, LongAdder sumBytes, LongAccumulator maxBytes,
+                                LongAccumulator maxAttributes) {
+    }
+
+    private record RequestMetrics(LongAdder ok, LongAdder ko, LongAdder sumMillis, WindowedHistogram latency) {
+    }
+
+    private LiveMetrics(boolean enabled, long windowSeconds, int maxRequestNames) {
+        this.enabled = enabled;
+        this.maxRequestNames = maxRequestNames;
+        this.stepNanos = TimeUnit.SECONDS.toNanos(Math.max(1, windowSeconds)) / WINDOW_STEPS;
+        this.running = enabled;
+        this.probe = enabled ? Thread.ofPlatform().name("live-metrics-probe").daemon().unstarted(this::probeLoop) : null;
+    }
+
+    /**
+     * Metrics with their background thread started, not exposed anywhere.
+     */
+    public static LiveMetrics create(long windowSeconds, int maxRequestNames) {
+        LiveMetrics metrics = new LiveMetrics(true, windowSeconds, maxRequestNames);
+        metrics.probe.start();
+        return metrics;
+    }
+
+    public static LiveMetrics disabled() {
+        return new LiveMetrics(false, 1, 0);
+    }
+
+    /**
+     * Metrics configured from system properties, once per JVM.
+     */
+    public static LiveMetrics shared() {
+        return SHARED;
+    }
+
+    private static LiveMetrics fromSystemProperties() {
+        String port = System.getProperty("METRICS_PORT");
+        if (port == null) {
+            return disabled();
+        }
+        LiveMetrics metrics = create(
+                Long.parseLong(System.getProperty("METRICS_WINDOW", "60")),
+                Integer.parseInt(System.getProperty("METRICS_MAX_REQUEST_NAMES", "200")));
+        try {
+            metrics.endpoint = PrometheusEndpoint.start(metrics,
+                    new InetSocketAddress(System.getProperty("METRICS_HOST", "127.0.0.1"), Integer.parseInt(port)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the metrics endpoint on port " + port, e);
+        }
+        System.out.println("Live metrics on " + metrics.endpoint.url());
+        Runtime.getRuntime().addShutdownHook(new Thread(metrics::close, "live-metrics-shutdown"));
+        return metrics;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Records one response; timestamps are epoch milliseconds, as Gatling reports them.
+     */
+    public void recordResponse(String requestName, long startMillis, long endMillis, boolean ok) {
+        if (!enabled) {
+            return;
+        }
+        RequestMetrics metrics = requests.get(requestName);
+        if (metrics == null) {
+            metrics = requests.size() < maxRequestNames
+                    ? requests.computeIfAbsent(requestName, name -> newRequestMetrics())
+                    : requests.computeIfAbsent(OTHER_REQUESTS, name -> newRequestMetrics());
+        }
+        long millis = Math.max(0, endMillis - startMillis);
+        (ok ? metrics.ok() : metrics.ko()).increment();
+        metrics.sumMillis().add(millis);
+        metrics.latency().record(millis);
+    }
+
+    public void userStarted(String scenario) {
+        if (enabled) {
+            scenarioUsers(scenario).started().increment();
+        }
+    }
+
+    public void userEnded(String scenario) {
+        if (enabled) {
+            scenarioUsers(scenario).ended().increment();
+        }
+    }
+
+    /**
+     * Records the estimated size of one session of {@code scenario}, as sampled by the simulation.
+     */
+    public void recordSessionSize(String scenario, int attributes, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        SessionSizes sizes = sessions.computeIfAbsent(scenario, name -> new SessionSizes(new LongAdder(),
+                new LongAdder(), new LongAccumulator(Math::max, 0), new LongAccumulator(Math::max, 0)));
+        sizes.samples().increment();
+        sizes.sumBytes().add(bytes);
+        sizes.maxBytes().accumulate(bytes);
+        sizes.maxAttributes().accumulate(attributes);
+    }
+
+    private ScenarioUsers scenarioUsers(String scenario) {
+        return users.computeIfAbsent(scenario, name -> new ScenarioUsers(new LongAdder(), new LongAdder()));
+    }
+
+    private static RequestMetrics newRequestMetrics() {
+        return new RequestMetrics(new LongAdder(), new LongAdder(), new LongAdder(), new WindowedHistogram());
+    }
+
+    private void probeLoop() {
+        long nextStep = System.nanoTime() + stepNanos;
+        while (running) {
+            long before = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(PROBE_INTERVAL_NANOS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            schedulerLag.record(TimeUnit.NANOSECONDS.toMicros(Math.max(0, now - before - PROBE_INTERVAL_NANOS)));
+            if (now >= nextStep) {
+                nextStep = now + stepNanos;
+                schedulerLag.moveWindow();
+                requests.values().forEach(metrics -> metrics.latency().moveWindow());
+            }
+        }
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writeOpenMetrics(StringBuilder out) {
+        Map<String, RequestMetrics> byName = new TreeMap<>(requests);
+
+        header(out, "gatling_requests_total", "counter", "Responses received, by request name and status (ok: HTTP status below 400)");
+        byName.forEach((name, metrics) -> {
+            sample(out, "gatling_requests_total", "request", name, "status", "ok", metrics.ok().sum());
+            sample(out, "gatling_requests_total", "request", name, "status", "ko", metrics.ko().sum());
+        });
+
+        header(out, "gatling_response_time_seconds", "summary", "Response time, quantiles over the sliding window, count and sum over the run");
+        byName.forEach((name, metrics) -> {
+            Histogram window = metrics.latency().window();
+            for (double quantile : QUANTILES) {
+                sample(out, "gatling_response_time_seconds", "request", name, "quantile", String.valueOf(quantile),
+                        window.getTotalCount() == 0 ? Double.NaN : window.getValueAtPercentile(quantile * 100) / 1000.0);
+            }
+            sample(out, "gatling_response_time_seconds_sum", "request", name, metrics.sumMillis().sum() / 1000.0);
+            sample(out, "gatling_response_time_seconds_count", "request", name, metrics.ok().sum() + metrics.ko().sum());
+        });
+
+        header(out, "gatling_active_users", "gauge", "Virtual users started and not finished yet, by scenario");
+        new TreeMap<>(users).forEach((scenario, count) ->
+                sample(out, "gatling_active_users", "scenario", scenario, count.started().sum() - count.ended().sum()));
+        header(out, "gatling_users_started_total", "counter", "Virtual users started, by scenario");
+        new TreeMap<>(users).forEach((scenario, count) ->
+                sample(out, "gatling_users_started_total", "scenario", scenario, count.started().sum()));
+
+        if (!sessions.isEmpty()) {
+            Map<String, SessionSizes> byScenario = new TreeMap<>(sessions);
+            header(out, "gatling_session_bytes", "summary", "Estimated size of the session attributes of virtual users, by scenario");
+            byScenario.forEach((scenario, sizes) -> {
+                sample(out, "gatling_session_bytes_sum", "scenario", scenario, sizes.sumBytes().sum());
+                sample(out, "gatling_session_bytes_count", "scenario", scenario, sizes.samples().sum());
+            });
+            header(out, "gatling_session_bytes_max", "gauge", "Largest estimated session size sampled, by scenario");
+            byScenario.forEach((scenario, sizes) ->
+                    sample(out, "gatling_session_bytes_max", "scenario", scenario, sizes.maxBytes().get()));
+            header(out, "gatling_session_attributes_max", "gauge", "Most session attributes sampled, by scenario");
+            byScenario.forEach((scenario, sizes) ->
+                    sample(out, "gatling_session_attributes_max", "scenario", scenario, sizes.maxAttributes().get()));
+        }
+
+        header(out, "injector_scheduler_lag_seconds", "summary", "Oversleep of a 10 ms sleep loop, over the sliding window");
+        Histogram lag = schedulerLag.window();
+        for (double quantile : QUANTILES) {
+            sample(out, "injector_scheduler_lag_seconds", "quantile", String.valueOf(quantile),
+                    lag.getTotalCount() == 0 ? Double.NaN : lag.getValueAtPercentile(quantile * 100) / 1_000_000.0);
+        }
+        header(out, "injector_scheduler_lag_seconds_max", "gauge", "Largest oversleep of a 10 ms sleep loop, over the sliding window");
+        sample(out, "injector_scheduler_lag_seconds_max", lag.getMaxValue() / 1_000_000.0);
+
+        header(out, "injector_gc_collections_total", "counter", "Garbage collections, by collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "injector_gc_collections_total", "collector", gc.getName(), Math.max(0, gc.getCollectionCount()));
+        }
+        header(out, "injector_gc_seconds_total", "counter", "Time spent in garbage collections, by collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "injector_gc_seconds_total", "collector", gc.getName(), Math.max(0, gc.getCollectionTime()) / 1000.0);
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(out, "injector_heap_used_bytes", "gauge", "Heap in use");
+        sample(out, "injector_heap_used_bytes", heap.getUsed());
+        header(out, "injector_heap_committed_bytes", "gauge", "Heap committed by the JVM");
+        sample(out, "injector_heap_committed_bytes", heap.getCommitted());
+        header(out, "injector_threads", "gauge", "Live JVM threads");
+        sample(out, "injector_threads", ManagementFactory.getThreadMXBean().getThreadCount());
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            header(out, "injector_process_cpu_seconds_total", "counter", "CPU time of the injector process");
+            sample(out, "injector_process_cpu_seconds_total", os.getProcessCpuTime() / 1e9);
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // labels are given as name, value pairs
+    private static void sample(StringBuilder out, String name, Object... labelsAndValue) {
+        out.append(name);
+        int labelCount = (labelsAndValue.length - 1) / 2;
+        for (int i = 0; i < labelCount; i++) {
+            out.append(i == 0 ? '{' : ',').append(labelsAndValue[2 * i]).append("=\"");
+            escapeLabel(out, (String) labelsAndValue[2 * i + 1]);
+            out.append('"');
+        }
+        if (labelCount > 0) {
+            out.append('}');
+        }
+        Object value = labelsAndValue[labelsAndValue.length - 1];
+        out.append(' ');
+        if (value instanceof Double d && d.isNaN()) {
+            out.append("NaN");
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void escapeLabel(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Stops the probe thread and the endpoint.
+     */
+    @Override
+    public void close() {
+        if (!enabled || !running) {
+            return;
+        }
+        running = false;
+        probe.interrupt();
+        if (endpoint != null) {
+            endpoint.stop();
+        }
+    }
+
+    /**
+     * Recorder plus the last {@link #WINDOW_STEPS} interval histograms taken from it.
+     */
+    private static final class WindowedHistogram {
+
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram[] steps = new Histogram[WINDOW_STEPS];
+        private int position;
+
+        void record(long value) {
+            recorder.recordValue(value);
+        }
+
+        synchronized void moveWindow() {
+            position = (position + 1) % steps.length;
+            // the replaced interval histogram is recycled by the recorder
+            steps[position] = recorder.getIntervalHistogram(steps[position]);
+        }
+
+        synchronized Histogram window() {
+            Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+            for (Histogram step : steps) {
+                if (step != null) {
+                    window.add(step);
+                }
+            }
+            return window;
+        }
+    }
+}
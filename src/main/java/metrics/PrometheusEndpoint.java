@@ -0,0 +1,65 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link LiveMetrics} on {@code /metrics} for Prometheus to scrape, on one thread of its own so a slow
+ * scraper never competes with the injector's threads.
+ */
+public final class PrometheusEndpoint {
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final LiveMetrics metrics;
+
+    private PrometheusEndpoint(HttpServer server, LiveMetrics metrics) {
+        this.server = server;
+        this.metrics = metrics;
+    }
+
+    public static PrometheusEndpoint start(LiveMetrics metrics, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 16);
+        PrometheusEndpoint endpoint = new PrometheusEndpoint(server, metrics);
+        server.createContext(PATH, endpoint::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable ->
+                Thread.ofPlatform().name("metrics-endpoint").daemon().unstarted(runnable)));
+        server.start();
+        return endpoint;
+    }
+
+    public String url() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + PATH;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(16 * 1024);
+            metrics.writeOpenMetrics(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
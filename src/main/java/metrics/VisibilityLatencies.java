@@ -0,0 +1,131 @@
+package metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-to-visibility latency: how long after the API acknowledged a write a read returns what was written. With a
+ * read replica or a cache in front of the database, a game can be created and still be missing from reads for a while,
+ * and that lag grows with the load; response times of the create and the read requests don't show it.
+ * <p>
+ * The probe polls the created game right after its creation, with a backoff doubling from {@code initialBackoff} up to
+ * {@code maxBackoff}, until a read returns it or {@code timeout} has passed. The recorded latency runs from the create
+ * response to the response of the first read returning the game, so it is an upper bound, within one backoff step and
+ * one read of the actual lag. Writes still not visible after the timeout are counted apart, not recorded.
+ * <p>
+ * Runtime parameters: {@code VISIBILITY_PROBE} ({@code true} to probe, default false),
+ * {@code VISIBILITY_PROBE_BACKOFF} (milliseconds, default 10), {@code VISIBILITY_PROBE_MAX_BACKOFF} (milliseconds,
+ * default 500), {@code VISIBILITY_PROBE_TIMEOUT} (milliseconds, default 10000), {@code VISIBILITY_HISTOGRAMS} (folder of
+ * the HdrHistogram log written at the end of the run, default {@code target/latency}).
+ */
+public final class VisibilityLatencies {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final boolean enabled;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long timeoutMillis;
+    private final Path histogramFolder;
+    private final Histogram visibility = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    private final Histogram polls = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    private final LongAdder notVisible = new LongAdder();
+    private final long startMillis = System.currentTimeMillis();
+
+    private VisibilityLatencies(boolean enabled, long initialBackoffMillis, long maxBackoffMillis, long timeoutMillis,
+                                Path histogramFolder) {
+        if (initialBackoffMillis <= 0 || maxBackoffMillis < initialBackoffMillis || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("The visibility probe needs 0 < backoff <= max backoff and a timeout > 0");
+        }
+        this.enabled = enabled;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.histogramFolder = histogramFolder;
+    }
+
+    public static VisibilityLatencies fromSystemProperties() {
+        return new VisibilityLatencies(Boolean.parseBoolean(System.getProperty("VISIBILITY_PROBE", "false")),
+                Long.parseLong(System.getProperty("VISIBILITY_PROBE_BACKOFF", "10")),
+                Long.parseLong(System.getProperty("VISIBILITY_PROBE_MAX_BACKOFF", "500")),
+                Long.parseLong(System.getProperty("VISIBILITY_PROBE_TIMEOUT", "10000")),
+                Path.of(System.getProperty("VISIBILITY_HISTOGRAMS", "target/latency")));
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Wait before poll number {@code poll} + 1, after {@code poll} reads that didn't return the write.
+     */
+    public Duration backoff(int poll) {
+        long millis = initialBackoffMillis;
+        for (int read = 1; read < poll && millis < maxBackoffMillis; read++) {
+            millis *= 2;
+        }
+        return Duration.ofMillis(Math.min(millis, maxBackoffMillis));
+    }
+
+    /**
+     * Whether a write acknowledged at {@code writtenMillis} (epoch milliseconds) is still worth polling for.
+     */
+    public boolean pending(long writtenMillis) {
+        return System.currentTimeMillis() - writtenMillis < timeoutMillis;
+    }
+
+    public void recordVisible(long writtenMillis, long readMillis, int readCount) {
+        visibility.recordValue(Math.max(0, readMillis - writtenMillis));
+        polls.recordValue(readCount);
+    }
+
+    public void recordNotVisible(int readCount) {
+        notVisible.increment();
+        polls.recordValue(readCount);
+    }
+
+    /**
+     * Percentiles of the write-to-visibility latency and the writes never seen, or null when nothing was probed.
+     */
+    public String summary() {
+        if (!enabled || polls.getTotalCount() == 0) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Read-after-write visibility (ms from the create response to the first read returning the game):%n"));
+        if (visibility.getTotalCount() == 0) {
+            report.append(String.format(Locale.ROOT, "  %d writes probed, none visible%n", polls.getTotalCount()));
+        } else {
+            report.append(String.format(Locale.ROOT, "  %d writes probed, %d visible: p50 %d, p90 %d, p99 %d, max %d%n",
+                    polls.getTotalCount(), visibility.getTotalCount(), visibility.getValueAtPercentile(50),
+                    visibility.getValueAtPercentile(90), visibility.getValueAtPercentile(99), visibility.getMaxValue()));
+        }
+        report.append(String.format(Locale.ROOT, "  reads per write: p50 %d, max %d%n",
+                polls.getValueAtPercentile(50), polls.getMaxValue()));
+        if (notVisible.sum() > 0) {
+            report.append(String.format(Locale.ROOT, "  %d writes not visible within %d ms%n", notVisible.sum(),
+                    timeoutMillis));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the write-to-visibility histogram of the run to {@code <folder>/<run>-visibility.hlog}, tagged
+     * {@code visibility}. Returns the file, or null when no write became visible.
+     */
+    public Path writeHistogram(String run) {
+        if (!enabled || visibility.getTotalCount() == 0) {
+            return null;
+        }
+        Path file = histogramFolder.resolve(run + "-visibility.hlog");
+        HistogramLogs.write(file, "Write-to-visibility latency in milliseconds", startMillis,
+                Map.of("visibility", visibility));
+        return file;
+    }
+}
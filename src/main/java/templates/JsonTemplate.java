@@ -0,0 +1,238 @@
+package templates;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * JSON body template compiled once into literal and slot segments, with slots written as {@code #{key}}.
+ * <p>
+ * Rendering looks every slot up once and writes its value straight into a per-thread scratch buffer, then copies
+ * the result into one exactly sized array. A slot inside a JSON string is written as escaped string content;
+ * a bare slot is typed from its value: numbers and booleans unquoted, strings quoted and escaped, {@code null} as
+ * {@code null}, lists and maps as arrays and objects. A slot without a value fails the render, bare or not, rather
+ * than sending {@code null} for a misspelt key.
+ */
+public final class JsonTemplate {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<ByteSink> SINKS = ThreadLocal.withInitial(ByteSink::new);
+
+    private final byte[][] literals;
+    private final String[] slotKeys;
+    private final boolean[] quotedSlots;
+
+    private JsonTemplate(byte[][] literals, String[] slotKeys, boolean[] quotedSlots) {
+        this.literals = literals;
+        this.slotKeys = slotKeys;
+        this.quotedSlots = quotedSlots;
+    }
+
+    /**
+     * Compiles the template; literal {@code i} is written before slot {@code i}, the last literal closes the body.
+     */
+    public static JsonTemplate compile(String template) {
+        List<byte[]> literals = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Boolean> quoted = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean inString = false;
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '#' && i + 1 < template.length() && template.charAt(i + 1) == '{') {
+                int end = template.indexOf('}', i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed slot at position " + i);
+                }
+                literals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+                literal.setLength(0);
+                keys.add(template.substring(i + 2, end).trim());
+                quoted.add(inString);
+                i = end + 1;
+                continue;
+            }
+            if (c == '\\' && inString && i + 1 < template.length()) {
+                literal.append(c).append(template.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            if (c == '"') {
+                inString = !inString;
+            }
+            literal.append(c);
+            i++;
+        }
+        literals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+        boolean[] quotedSlots = new boolean[quoted.size()];
+        for (int slot = 0; slot < quotedSlots.length; slot++) {
+            quotedSlots[slot] = quoted.get(slot);
+        }
+        return new JsonTemplate(literals.toArray(byte[][]::new), keys.toArray(String[]::new), quotedSlots);
+    }
+
+    public List<String> slotKeys() {
+        return List.of(slotKeys);
+    }
+
+    /**
+     * Renders the template, {@code values} returns the value of a slot key or null when it is not defined.
+     *
+     * @throws IllegalArgumentException when a slot has no value
+     */
+    public byte[] render(Function<String, Object> values) {
+        return render(values, key -> false);
+    }
+
+    /**
+     * Renders the template, {@code values} returns the value of a slot key and {@code defined} tells a key defined
+     * with a null value, written as JSON {@code null} by a bare slot, from a missing one. {@code defined} is only asked
+     * about keys whose value is null.
+     *
+     * @throws IllegalArgumentException when a slot has no value, or a slot inside a JSON string has a null one
+     */
+    public byte[] render(Function<String, Object> values, Predicate<String> defined) {
+        ByteSink sink = SINKS.get();
+        sink.reset();
+        for (int slot = 0; slot < slotKeys.length; slot++) {
+            sink.write(literals[slot]);
+            Object value = values.apply(slotKeys[slot]);
+            if (value == null && (quotedSlots[slot] || !defined.test(slotKeys[slot]))) {
+                throw new IllegalArgumentException("No attribute named '" + slotKeys[slot] + "' is defined");
+            }
+            if (quotedSlots[slot]) {
+                writeEscaped(sink, value.toString());
+            } else {
+                writeValue(sink, value);
+            }
+        }
+        sink.write(literals[slotKeys.length]);
+        return sink.toByteArray();
+    }
+
+    private static void writeValue(ByteSink sink, Object value) {
+        if (value == null) {
+            sink.write(NULL);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writeAscii(sink, value.toString());
+        } else if (value instanceof Map<?, ?> map) {
+            sink.write('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                sink.write('"');
+                writeEscaped(sink, String.valueOf(entry.getKey()));
+                sink.write('"');
+                sink.write(':');
+                writeValue(sink, entry.getValue());
+                if (entries.hasNext()) {
+                    sink.write(',');
+                }
+            }
+            sink.write('}');
+        } else if (value instanceof Iterable<?> iterable) {
+            sink.write('[');
+            Iterator<?> elements = iterable.iterator();
+            while (elements.hasNext()) {
+                writeValue(sink, elements.next());
+                if (elements.hasNext()) {
+                    sink.write(',');
+                }
+            }
+            sink.write(']');
+        } else {
+            sink.write('"');
+            writeEscaped(sink, value.toString());
+            sink.write('"');
+        }
+    }
+
+    private static void writeAscii(ByteSink sink, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            sink.write(text.charAt(i));
+        }
+    }
+
+    // JSON string escaping and UTF-8 encoding in one pass, without an intermediate byte[]
+    private static void writeEscaped(ByteSink sink, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> sink.write('\\', '"');
+                case '\\' -> sink.write('\\', '\\');
+                case '\n' -> sink.write('\\', 'n');
+                case '\r' -> sink.write('\\', 'r');
+                case '\t' -> sink.write('\\', 't');
+                case '\b' -> sink.write('\\', 'b');
+                case '\f' -> sink.write('\\', 'f');
+                default -> {
+                    if (c < 0x20) {
+                        sink.write('\\', 'u');
+                        sink.write('0', '0');
+                        sink.write(HEX[c >> 4], HEX[c & 0xF]);
+                    } else if (c < 0x80) {
+                        sink.write(c);
+                    } else if (c < 0x800) {
+                        sink.write(0xC0 | c >> 6, 0x80 | c & 0x3F);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                        sink.write(0xF0 | codePoint >> 18, 0x80 | codePoint >> 12 & 0x3F);
+                        sink.write(0x80 | codePoint >> 6 & 0x3F, 0x80 | codePoint & 0x3F);
+                    } else {
+                        sink.write(0xE0 | c >> 12);
+                        sink.write(0x80 | c >> 6 & 0x3F, 0x80 | c & 0x3F);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable scratch buffer, one per thread, reused across renders.
+     */
+    private static final class ByteSink {
+
+        private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void write(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(int first, int second) {
+            ensureCapacity(2);
+            bytes[size++] = (byte) first;
+            bytes[size++] = (byte) second;
+        }
+
+        void write(byte[] chunk) {
+            ensureCapacity(chunk.length);
+            System.arraycopy(chunk, 0, bytes, size, chunk.length);
+            size += chunk.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Thread-safe generator of game ids in {@code [minId, maxId]} following a configurable access distribution.
+ * Meant to be called once per request, so every virtual user walks the key space on its own.
+ */
+public class GameIdGenerator {
+
+    public enum Distribution {
+        /**
+         * Every id is equally likely.
+         */
+        UNIFORM,
+        /**
+         * Id rank {@code k} is drawn with probability proportional to {@code 1 / k^exponent}, lowest ids are hottest.
+         */
+        ZIPFIAN,
+        /**
+         * A share of requests goes to the first {@code hotSetSize} ids, the rest is spread uniformly over the others.
+         */
+        HOT_SET;
+
+        public static Distribution parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final Distribution distribution;
+    private final int minId;
+    private final int maxId;
+    private final double[] zipfCdf;
+    private final int hotSetSize;
+    private final double hotSetShare;
+
+    private GameIdGenerator(Distribution distribution, int minId, int maxId,
+                            double zipfExponent, int hotSetSize, double hotSetShare) {
+        if (maxId < minId) {
+            throw new IllegalArgumentException("maxId %d is lower than minId %d".formatted(maxId, minId));
+        }
+        this.distribution = distribution;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.zipfCdf = distribution == Distribution.ZIPFIAN ? zipfCdf(maxId - minId + 1, zipfExponent) : null;
+        this.hotSetSize = Math.max(1, Math.min(hotSetSize, maxId - minId + 1));
+        this.hotSetShare = hotSetShare;
+    }
+
+    public static GameIdGenerator uniform(int minId, int maxId) {
+        return new GameIdGenerator(Distribution.UNIFORM, minId, maxId, 0, 1, 0);
+    }
+
+    public static GameIdGenerator zipfian(int minId, int maxId, double exponent) {
+        return new GameIdGenerator(Distribution.ZIPFIAN, minId, maxId, exponent, 1, 0);
+    }
+
+    public static GameIdGenerator hotSet(int minId, int maxId, int hotSetSize, double hotSetShare) {
+        return new GameIdGenerator(Distribution.HOT_SET, minId, maxId, 0, hotSetSize, hotSetShare);
+    }
+
+    public int nextId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (distribution) {
+            case UNIFORM -> random.nextInt(minId, maxId + 1);
+            case ZIPFIAN -> minId + rank(random.nextDouble());
+            case HOT_SET -> {
+                int coldSize = maxId - minId + 1 - hotSetSize;
+                if (coldSize == 0 || random.nextDouble() < hotSetShare) {
+                    yield minId + random.nextInt(hotSetSize);
+                }
+                yield minId + hotSetSize + random.nextInt(coldSize);
+            }
+        };
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    private int rank(double uniform) {
+        int index = Arrays.binarySearch(zipfCdf, uniform);
+        return index >= 0 ? index : Math.min(-index - 1, zipfCdf.length - 1);
+    }
+
+    // cumulative probabilities are precomputed once, so drawing an id is a binary search
+    private static double[] zipfCdf(int size, double exponent) {
+        double[] cdf = new double[size];
+        double sum = 0;
+        for (int rank = 1; rank <= size; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+}
@@ -1,10 +1,27 @@
 import io.gatling.app.Gatling;
+import videogamedb.distributed.InjectorCoordinator;
+import videogamedb.distributed.InjectorWorker;
+import videogamedb.reporting.StreamingReport;
 
 public class Engine {
 
+  private static final String DEFAULT_SIMULATION = "videogamedb.finalsimulation.VideoGameDbFullTest";
+
   public static void main(String[] args) {
+    String simulation = System.getProperty("SIMULATION", DEFAULT_SIMULATION);
+    // -DINJECTORS=N coordinates N injector JVMs, -DCOORDINATOR=host:port joins a coordinator as one of them
+    if (System.getProperty("INJECTORS") != null) {
+      System.exit(InjectorCoordinator.runFromSystemProperties(simulation, IDEPathHelper.resultsDirectory));
+    }
+    if (System.getProperty("COORDINATOR") != null) {
+      System.exit(InjectorWorker.runFromSystemProperties());
+    }
+    // -DREPORT_RUN=<run folder>|latest reports on a finished run in bounded memory instead of running a simulation
+    if (System.getProperty("REPORT_RUN") != null) {
+      System.exit(StreamingReport.runFromSystemProperties(IDEPathHelper.resultsDirectory));
+    }
     String[] gatlingArgs = {
-      "--simulation", "videogamedb.finalsimulation.VideoGameDbFullTest",
+      "--simulation", simulation,
       "--results-folder", IDEPathHelper.resultsDirectory.toString()
     };
     Gatling.main(gatlingArgs);
@@ -0,0 +1,241 @@
+package videogamedb.distributed;
+
+import io.gatling.app.Gatling$;
+import videogamedb.reporting.RunStore;
+import videogamedb.stub.VideoGameDbStubServer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Runs one simulation on several injector JVMs and builds a single report from all of them.
+ * <p>
+ * The coordinator listens on a socket, starts {@code localInjectors} worker processes on this machine and waits for
+ * the others ({@link InjectorWorker} started on other hosts with {@code -DCOORDINATOR=host:port}). Each worker gets the
+ * simulation, its index, the common start time and the run parameters, runs its share of the load profile and
+ * streams its {@code simulation.log} back while the test runs. The logs are then merged with
+ * {@link SimulationLogMerger} and Gatling generates the report of the merged run.
+ * <p>
+ * Run parameters are the upper-case system properties of the coordinator ({@code USERS}, {@code LOAD_PROFILE}, ...).
+ * With {@code STUB_SERVER=true} the coordinator hosts the stub itself and points every worker at it, on
+ * {@code COORDINATOR_HOST} (default the address of this host's name), which remote workers must be able to reach.
+ */
+public final class InjectorCoordinator {
+
+    static final byte FRAME_LOG = 1;
+    static final byte FRAME_DONE = 2;
+
+    private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+    private static final Pattern RUN_PROPERTY = Pattern.compile("[A-Z][A-Z0-9_]*");
+
+    private final String simulation;
+    private final int injectorCount;
+    private final int localInjectors;
+    private final int port;
+    private final long startDelayMillis;
+    private final Path resultsFolder;
+
+    public InjectorCoordinator(String simulation, int injectorCount, int localInjectors, int port,
+                               long startDelayMillis, Path resultsFolder) {
+        if (localInjectors > injectorCount) {
+            throw new IllegalArgumentException("%d local injectors for %d injectors".formatted(localInjectors, injectorCount));
+        }
+        this.simulation = simulation;
+        this.injectorCount = injectorCount;
+        this.localInjectors = localInjectors;
+        this.port = port;
+        this.startDelayMillis = startDelayMillis;
+        this.resultsFolder = resultsFolder;
+    }
+
+    /**
+     * Runs the simulation on every injector, then generates the merged report; returns Gatling's status code.
+     */
+    public int run() throws IOException, InterruptedException {
+        String runId = simulation.substring(simulation.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT)
+                + "-distributed-" + LocalDateTime.now().format(RUN_ID_FORMAT);
+        Path runFolder = Files.createDirectories(resultsFolder.resolve(runId));
+        Path injectorsFolder = Files.createDirectories(runFolder.resolve("injectors"));
+        Map<String, String> properties = runProperties();
+
+        List<Process> processes = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(port)) {
+            server.setSoTimeout((int) TimeUnit.MINUTES.toMillis(2));
+            String address = "localhost:" + server.getLocalPort();
+            System.out.printf("Coordinator listening on %s:%d for %d injectors%n",
+                    InetAddress.getLocalHost().getHostName(), server.getLocalPort(), injectorCount);
+            for (int i = 0; i < localInjectors; i++) {
+                processes.add(startLocalWorker(address, injectorsFolder.resolve("injector-" + i + ".out")));
+            }
+            while (sockets.size() < injectorCount) {
+                sockets.add(server.accept());
+            }
+        }
+
+        // one common start, far enough ahead for every worker to load the simulation
+        long startAt = System.currentTimeMillis() + startDelayMillis;
+        List<Thread> receivers = new ArrayList<>();
+        int[] exitCodes = new int[injectorCount];
+        for (int index = 0; index < injectorCount; index++) {
+            Socket socket = sockets.get(index);
+            sendAssignment(socket, index, startAt, properties);
+            Path log = injectorsFolder.resolve("injector-" + index + ".log");
+            int injector = index;
+            receivers.add(Thread.ofPlatform().name("injector-" + index + "-receiver").start(() ->
+                    exitCodes[injector] = receive(socket, log)));
+        }
+        for (Thread receiver : receivers) {
+            receiver.join();
+        }
+        for (Process process : processes) {
+            process.waitFor();
+        }
+
+        List<Path> logs = new ArrayList<>();
+        for (int index = 0; index < injectorCount; index++) {
+            Path log = injectorsFolder.resolve("injector-" + index + ".log");
+            if (Files.size(log) > 0) {
+                logs.add(log);
+            }
+            System.out.printf("Injector %d finished with status %d%n", index, exitCodes[index]);
+        }
+        if (logs.isEmpty()) {
+            System.err.println("No injector produced a simulation.log");
+            return 1;
+        }
+        long records = SimulationLogMerger.merge(logs, runFolder.resolve("simulation.log"),
+                "%d injectors".formatted(logs.size()));
+        System.out.printf("Merged %d records from %d injectors into %s%n", records, logs.size(), runFolder);
+        RunStore runStore = RunStore.fromSystemProperties();
+        if (runStore.enabled()) {
+            System.out.println("Run stored as " + runStore.add(runFolder.resolve("simulation.log"), RunStore.gitCommit(),
+                    System.getProperty("LOAD_PROFILE", "default")));
+        }
+        int reportStatus = Gatling$.MODULE$.fromArgs(new String[]{
+                "--reports-only", runId,
+                "--results-folder", resultsFolder.toAbsolutePath().toString()});
+        int status = reportStatus;
+        for (int exitCode : exitCodes) {
+            status = Math.max(status, exitCode);
+        }
+        return status;
+    }
+
+    // the run parameters of this repository are the upper-case system properties
+    private static Map<String, String> runProperties() throws IOException {
+        Map<String, String> properties = new TreeMap<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> RUN_PROPERTY.matcher(name).matches())
+                .filter(name -> !name.equals("INJECTORS") && !name.equals("LOCAL_INJECTORS")
+                        && !name.equals("COORDINATOR") && !name.equals("COORDINATOR_PORT")
+                        && !name.equals("COORDINATOR_HOST"))
+                .forEach(name -> properties.put(name, System.getProperty(name)));
+        if (Boolean.parseBoolean(properties.remove("STUB_SERVER"))) {
+            // remote workers can't reach localhost
+            String host = System.getProperty("STUB_HOST",
+                    System.getProperty("COORDINATOR_HOST", InetAddress.getLocalHost().getHostAddress()));
+            properties.put("BASE_URL", VideoGameDbStubServer.startShared(host).baseUrl());
+        }
+        return properties;
+    }
+
+    // same JVM, flags and classpath as the coordinator; run parameters come over the socket, other system properties
+    // (gatling.conf.file of the high-load profile, ...) are passed on as they are
+    private static Process startLocalWorker(String coordinator, Path output) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(argument -> !isRunPropertyFlag(argument) && !argument.startsWith("-agentlib:jdwp"))
+                .forEach(command::add);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(InjectorWorker.class.getName());
+        command.add(coordinator);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+    }
+
+    private static boolean isRunPropertyFlag(String argument) {
+        if (!argument.startsWith("-D")) {
+            return false;
+        }
+        int equals = argument.indexOf('=');
+        return RUN_PROPERTY.matcher(argument.substring(2, equals < 0 ? argument.length() : equals)).matches();
+    }
+
+    private void sendAssignment(Socket socket, int index, long startAt, Map<String, String> properties) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(simulation);
+        out.writeInt(index);
+        out.writeInt(injectorCount);
+        out.writeLong(startAt);
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+        out.flush();
+    }
+
+    // appends the log chunks of one worker until it reports its status, -1 when the connection is lost
+    private static int receive(Socket socket, Path log) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             OutputStream out = Files.newOutputStream(log)) {
+            while (true) {
+                byte frame = in.readByte();
+                if (frame == FRAME_DONE) {
+                    return in.readInt();
+                }
+                byte[] chunk = in.readNBytes(in.readInt());
+                out.write(chunk);
+            }
+        } catch (IOException e) {
+            System.err.printf("Lost injector connection: %s%n", e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Entry point of {@code Engine} in distributed mode, see {@code INJECTORS} in the README.
+     */
+    public static int runFromSystemProperties(String simulation, Path resultsFolder) {
+        int injectors = Integer.parseInt(System.getProperty("INJECTORS", "1"));
+        InjectorCoordinator coordinator = new InjectorCoordinator(simulation, injectors,
+                Integer.parseInt(System.getProperty("LOCAL_INJECTORS", String.valueOf(injectors))),
+                Integer.parseInt(System.getProperty("COORDINATOR_PORT", "0")),
+                Long.parseLong(System.getProperty("START_DELAY_MS", "5000")),
+                resultsFolder);
+        try {
+            return coordinator.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+}
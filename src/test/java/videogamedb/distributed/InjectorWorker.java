@@ -0,0 +1,172 @@
+package videogamedb.distributed;
+
+import io.gatling.app.Gatling$;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * One injector of a distributed run: connects to the {@link InjectorCoordinator}, receives its assignment, runs the
+ * simulation without generating reports and streams the {@code simulation.log} it writes back to the coordinator.
+ * <p>
+ * Started by the coordinator for local injectors, or by hand on another host with
+ * {@code java -cp <test classpath> videogamedb.distributed.InjectorWorker host:port} (or {@code Engine} with
+ * {@code -DCOORDINATOR=host:port}).
+ */
+public final class InjectorWorker {
+
+    private static final long TAIL_INTERVAL_MILLIS = 200;
+
+    private final String coordinator;
+
+    public InjectorWorker(String coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Runs the assigned share of the simulation and returns Gatling's status code.
+     */
+    public int run() throws IOException, InterruptedException {
+        int separator = coordinator.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("COORDINATOR must be host:port, got " + coordinator);
+        }
+        try (Socket socket = new Socket(coordinator.substring(0, separator),
+                Integer.parseInt(coordinator.substring(separator + 1)))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            String simulation = in.readUTF();
+            int index = in.readInt();
+            int count = in.readInt();
+            long startAt = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                System.setProperty(in.readUTF(), in.readUTF());
+            }
+            System.setProperty("INJECTOR_INDEX", String.valueOf(index));
+            System.setProperty("INJECTOR_COUNT", String.valueOf(count));
+            System.setProperty("START_AT", String.valueOf(startAt));
+            System.out.printf("Injector %d of %d running %s%n", index, count, simulation);
+
+            Path resultsFolder = Files.createTempDirectory("injector-" + index + "-");
+            LogTail tail = new LogTail(resultsFolder, out);
+            Thread tailThread = Thread.ofPlatform().daemon().name("simulation-log-tail").start(tail);
+            int status;
+            try {
+                status = Gatling$.MODULE$.fromArgs(new String[]{
+                        "--simulation", simulation,
+                        "--results-folder", resultsFolder.toString(),
+                        "--no-reports"});
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                status = 1;
+            }
+            tail.finish();
+            tailThread.join();
+            if (tail.failure != null) {
+                throw tail.failure;
+            }
+            out.writeByte(InjectorCoordinator.FRAME_DONE);
+            out.writeInt(status);
+            out.flush();
+            return status;
+        }
+    }
+
+    /**
+     * Sends what Gatling appends to {@code simulation.log} as log frames, until the run is over and the file drained.
+     */
+    private static final class LogTail implements Runnable {
+
+        private final Path resultsFolder;
+        private final DataOutputStream out;
+        private volatile boolean finished;
+        private IOException failure;
+
+        LogTail(Path resultsFolder, DataOutputStream out) {
+            this.resultsFolder = resultsFolder;
+            this.out = out;
+        }
+
+        void finish() {
+            finished = true;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1 << 16];
+            InputStream log = null;
+            try {
+                while (true) {
+                    // read the flag first, so the last pass sees everything written before the run ended
+                    boolean last = finished;
+                    if (log == null) {
+                        Optional<Path> path = findLog();
+                        if (path.isPresent()) {
+                            log = Files.newInputStream(path.get());
+                        }
+                    }
+                    if (log != null) {
+                        for (int read = log.read(buffer); read > 0; read = log.read(buffer)) {
+                            out.writeByte(InjectorCoordinator.FRAME_LOG);
+                            out.writeInt(read);
+                            out.write(buffer, 0, read);
+                        }
+                        out.flush();
+                    }
+                    if (last) {
+                        return;
+                    }
+                    Thread.sleep(TAIL_INTERVAL_MILLIS);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (log != null) {
+                    try {
+                        log.close();
+                    } catch (IOException ignored) {
+                        // read-only
+                    }
+                }
+            }
+        }
+
+        private Optional<Path> findLog() throws IOException {
+            try (Stream<Path> runs = Files.list(resultsFolder)) {
+                return runs.map(run -> run.resolve("simulation.log")).filter(Files::isRegularFile).findFirst();
+            }
+        }
+    }
+
+    /**
+     * Entry point of {@code Engine} in worker mode.
+     */
+    public static int runFromSystemProperties() {
+        try {
+            return new InjectorWorker(System.getProperty("COORDINATOR")).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            System.setProperty("COORDINATOR", args[0]);
+        }
+        System.exit(runFromSystemProperties());
+    }
+}
@@ -0,0 +1,272 @@
+package videogamedb.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the binary {@code simulation.log} files written by several injectors into one, so Gatling's
+ * {@code --reports-only} builds a single report with percentiles computed over every response of every injector.
+ * <p>
+ * The format is the one of Gatling 3.14's {@code LogFileDataWriter}: a run header (version, simulation, start time,
+ * description, scenario names, pickled assertions) followed by user, request, group and error records whose
+ * timestamps are ints relative to the run start and whose names are cached strings (a positive index introduces a
+ * string, a negative one refers back to it). The merged run starts at the earliest injector start; every record is
+ * rebased onto it and its strings and scenario indexes are re-encoded.
+ */
+public final class SimulationLogMerger {
+
+    private static final byte RUN = 0;
+    private static final byte REQUEST = 1;
+    private static final byte USER = 2;
+    private static final byte GROUP = 3;
+    private static final byte ERROR = 4;
+
+    private SimulationLogMerger() {
+    }
+
+    /**
+     * String as Gatling serializes it: the internal value bytes of the {@code java.lang.String} and its coder.
+     */
+    private record Text(byte[] value, byte coder) {
+
+        static final Text EMPTY = new Text(new byte[0], (byte) 0);
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Text text && coder == text.coder && Arrays.equals(value, text.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(value) + coder;
+        }
+    }
+
+    private record RunHeader(Text gatlingVersion, Text simulationClassName, long start, Text runDescription,
+                             List<Text> scenarios, List<byte[]> assertions) {
+    }
+
+    /**
+     * Writes the merged log of {@code inputs} to {@code output} and returns the number of records written.
+     * A truncated last record, as left by an injector that was killed, ends its input without failing the merge.
+     */
+    public static long merge(List<Path> inputs, Path output, String runDescription) throws IOException {
+        List<RunHeader> headers = new ArrayList<>();
+        for (Path input : inputs) {
+            try (DataInputStream in = open(input)) {
+                if (in.readByte() != RUN) {
+                    throw new IOException(input + " doesn't start with a run record");
+                }
+                headers.add(readRunHeader(in));
+            }
+        }
+        long start = headers.stream().mapToLong(RunHeader::start).min().orElseThrow();
+        List<Text> scenarios = new ArrayList<>();
+        headers.forEach(header -> header.scenarios().stream().filter(name -> !scenarios.contains(name)).forEach(scenarios::add));
+
+        long records = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 1 << 16))) {
+            RunHeader first = headers.get(0);
+            writeRunHeader(out, new RunHeader(first.gatlingVersion(), first.simulationClassName(), start,
+                    text(runDescription), scenarios, first.assertions()));
+            Map<Text, Integer> outputCache = new HashMap<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                RunHeader header = headers.get(i);
+                int[] scenarioMapping = header.scenarios().stream().mapToInt(scenarios::indexOf).toArray();
+                int offset = Math.toIntExact(header.start() - start);
+                try (DataInputStream in = open(inputs.get(i))) {
+                    in.readByte();
+                    readRunHeader(in);
+                    records += copyRecords(in, out, scenarioMapping, offset, outputCache);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static DataInputStream open(Path input) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(input), 1 << 16));
+    }
+
+    private static long copyRecords(DataInputStream in, DataOutputStream out, int[] scenarioMapping, int offset,
+                                    Map<Text, Integer> outputCache) throws IOException {
+        Map<Integer, Text> inputCache = new HashMap<>();
+        long records = 0;
+        while (true) {
+            int header = in.read();
+            if (header < 0) {
+                return records;
+            }
+            // a record is decoded completely before anything is written, so a truncated one is simply dropped
+            try {
+                switch (header) {
+                    case USER -> {
+                        int scenario = scenarioMapping[in.readInt()];
+                        boolean userStart = in.readBoolean();
+                        int timestamp = in.readInt() + offset;
+                        out.writeByte(USER);
+                        out.writeInt(scenario);
+                        out.writeBoolean(userStart);
+                        out.writeInt(timestamp);
+                    }
+                    case REQUEST -> {
+                        List<Text> groups = readGroups(in, inputCache);
+                        Text name = readCachedText(in, inputCache);
+                        int requestStart = in.readInt() + offset;
+                        int requestEnd = in.readInt() + offset;
+                        boolean ok = in.readBoolean();
+                        Text message = readCachedText(in, inputCache);
+                        out.writeByte(REQUEST);
+                        writeGroups(out, groups, outputCache);
+                        writeCachedText(out, name, outputCache);
+                        out.writeInt(requestStart);
+                        out.writeInt(requestEnd);
+                        out.writeBoolean(ok);
+                        writeCachedText(out, message, outputCache);
+                    }
+                    case GROUP -> {
+                        List<Text> groups = readGroups(in, inputCache);
+                        int groupStart = in.readInt() + offset;
+                        int groupEnd = in.readInt() + offset;
+                        int cumulatedResponseTime = in.readInt();
+                        boolean ok = in.readBoolean();
+                        out.writeByte(GROUP);
+                        writeGroups(out, groups, outputCache);
+                        out.writeInt(groupStart);
+                        out.writeInt(groupEnd);
+                        out.writeInt(cumulatedResponseTime);
+                        out.writeBoolean(ok);
+                    }
+                    case ERROR -> {
+                        Text message = readCachedText(in, inputCache);
+                        int timestamp = in.readInt() + offset;
+                        out.writeByte(ERROR);
+                        writeCachedText(out, message, outputCache);
+                        out.writeInt(timestamp);
+                    }
+                    default -> throw new IOException("Unknown record header " + header);
+                }
+            } catch (EOFException e) {
+                return records;
+            }
+            records++;
+        }
+    }
+
+    private static RunHeader readRunHeader(DataInputStream in) throws IOException {
+        Text gatlingVersion = readText(in);
+        Text simulationClassName = readText(in);
+        long start = in.readLong();
+        Text runDescription = readText(in);
+        List<Text> scenarios = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            scenarios.add(readText(in));
+        }
+        List<byte[]> assertions = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            assertions.add(in.readNBytes(in.readInt()));
+        }
+        return new RunHeader(gatlingVersion, simulationClassName, start, runDescription, scenarios, assertions);
+    }
+
+    private static void writeRunHeader(DataOutputStream out, RunHeader header) throws IOException {
+        out.writeByte(RUN);
+        writeText(out, header.gatlingVersion());
+        writeText(out, header.simulationClassName());
+        out.writeLong(header.start());
+        writeText(out, header.runDescription());
+        out.writeInt(header.scenarios().size());
+        for (Text scenario : header.scenarios()) {
+            writeText(out, scenario);
+        }
+        out.writeInt(header.assertions().size());
+        for (byte[] assertion : header.assertions()) {
+            out.writeInt(assertion.length);
+            out.write(assertion);
+        }
+    }
+
+    private static List<Text> readGroups(DataInputStream in, Map<Integer, Text> inputCache) throws IOException {
+        int count = in.readInt();
+        List<Text> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(readCachedText(in, inputCache));
+        }
+        return groups;
+    }
+
+    private static void writeGroups(DataOutputStream out, List<Text> groups, Map<Text, Integer> outputCache) throws IOException {
+        out.writeInt(groups.size());
+        for (Text group : groups) {
+            writeCachedText(out, group, outputCache);
+        }
+    }
+
+    private static Text readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return Text.EMPTY;
+        }
+        byte[] value = in.readNBytes(length);
+        if (value.length < length) {
+            throw new EOFException();
+        }
+        return new Text(value, in.readByte());
+    }
+
+    private static void writeText(DataOutputStream out, Text text) throws IOException {
+        out.writeInt(text.value().length);
+        if (text.value().length > 0) {
+            out.write(text.value());
+            out.writeByte(text.coder());
+        }
+    }
+
+    private static Text readCachedText(DataInputStream in, Map<Integer, Text> inputCache) throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            Text text = readText(in);
+            inputCache.put(index, text);
+            return text;
+        }
+        Text cached = inputCache.get(-index);
+        if (cached == null) {
+            throw new IOException("Unknown cached string " + -index);
+        }
+        return cached;
+    }
+
+    private static void writeCachedText(DataOutputStream out, Text text, Map<Text, Integer> outputCache) throws IOException {
+        Integer index = outputCache.get(text);
+        if (index != null) {
+            out.writeInt(-index);
+            return;
+        }
+        // Gatling numbers cached strings from 1
+        index = outputCache.size() + 1;
+        outputCache.put(text, index);
+        out.writeInt(index);
+        writeText(out, text);
+    }
+
+    // Latin-1 only, which is all the run description needs
+    private static Text text(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = value.charAt(i);
+            bytes[i] = (byte) (c < 256 ? c : '?');
+        }
+        return bytes.length == 0 ? Text.EMPTY : new Text(bytes, (byte) 0);
+    }
+}
@@ -1,33 +1,26 @@
 package videogamedb.feeders;
 
+import feeders.GameIdFeeder;
+import feeders.RandomGameFeeder;
 import io.gatling.javaapi.core.ChainBuilder;
 import io.gatling.javaapi.core.FeederBuilder;
 import io.gatling.javaapi.core.ScenarioBuilder;
 import io.gatling.javaapi.http.HttpProtocolBuilder;
-import org.apache.commons.lang3.RandomStringUtils;
+import utils.GameIdGenerator;
 import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
 
-import java.security.SecureRandom;
-import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Stream;
 
 import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
-import static io.gatling.javaapi.core.CoreDsl.ElFileBody;
-import static io.gatling.javaapi.core.CoreDsl.atOnceUsers;
-import static io.gatling.javaapi.core.CoreDsl.bodyString;
 import static io.gatling.javaapi.core.CoreDsl.csv;
 import static io.gatling.javaapi.core.CoreDsl.exec;
 import static io.gatling.javaapi.core.CoreDsl.feed;
 import static io.gatling.javaapi.core.CoreDsl.jmesPath;
 import static io.gatling.javaapi.core.CoreDsl.jsonFile;
-import static io.gatling.javaapi.core.CoreDsl.scenario;
-import static io.gatling.javaapi.http.HttpDsl.http;
 import static io.gatling.javaapi.http.HttpDsl.status;
+import static videogamedb.scriptfundamentals.TemplateBodies.JsonTemplateBody;
 
 @SuppressWarnings("unused")
 public class VideoGameDbFeeders extends BaseSimulation {
@@ -39,39 +32,18 @@ public class VideoGameDbFeeders extends BaseSimulation {
 
     private static final FeederBuilder.FileBased<String> csvFeeder = csv("feeders/gameCsvFile.csv").circular();
     private static final FeederBuilder.FileBased<Object> jsonFeeder = jsonFile("feeders/gameJsonFile.json").random();
+    // pooled values, thread-local PRNG and reused records: no SecureRandom or HashMap per record
     private static final Iterator<Map<String, Object>> customGameIdFeeder =
-            Stream.generate(() -> {
-                Random rand = new SecureRandom();
-                int gameId = rand.nextInt(MIN_GAME_ID, MAX_GAME_ID + 1);
-                Map<String, Object> map = new HashMap<>();
-                map.put("gameId", gameId);
-                return map;
-            }).iterator();
+            new GameIdFeeder(GameIdGenerator.uniform(MIN_GAME_ID, MAX_GAME_ID));
 
-    private static final Iterator<Map<String, Object>> customCreateGameFeeder =
-            Stream.generate(() -> {
-
-                String gameName = RandomStringUtils.secure().nextAlphanumeric(5) + "-gameName";
-                String releaseDate = randomDate().toString();
-                int reviewScore = new SecureRandom().nextInt(100);
-                String category = RandomStringUtils.secure().nextAlphanumeric(5) + "-category";
-                String rating = RandomStringUtils.secure().nextAlphanumeric(4) + "-rating";
-
-                Map<String, Object> gameMap = new HashMap<>();
-                gameMap.put("name", gameName);
-                gameMap.put("releaseDate", releaseDate);
-                gameMap.put("reviewScore", reviewScore);
-                gameMap.put("category", category);
-                gameMap.put("rating", rating);
-                return gameMap;
-            }).iterator();
+    private static final Iterator<Map<String, Object>> customCreateGameFeeder = new RandomGameFeeder();
 
     private static final ChainBuilder createNewGame =
             feed(customCreateGameFeeder)
-                    .exec(http("Create New Game using Custom Feeder and JSON template - #{name} and #{gameId}")
+                    .exec(debugResponseBody(http("Create New Game using Custom Feeder and JSON template - #{name} and #{gameId}")
                             .post(VIDEO_GAME_ENDPOINT.getName())
                             .header(AUTH_HEADER, getAuthValue())
-                            .body(ElFileBody("feeders/bodies/newGameTemplate.json")).asJson()
+                            .body(JsonTemplateBody("feeders/bodies/newGameTemplate.json")).asJson()
                             .check(status().is(200))
                             // id is always 0 when creating a new game
                             .check(jmesPath("id").exists())
@@ -79,12 +51,8 @@ public class VideoGameDbFeeders extends BaseSimulation {
                             .check(jmesPath("releaseDate").isEL("#{releaseDate}"))
                             .check(jmesPath("reviewScore").isEL("#{reviewScore}"))
                             .check(jmesPath("category").isEL("#{category}"))
-                            .check(jmesPath("rating").isEL("#{rating}"))
-                            .check(bodyString().saveAs("responseBody")))
-                    .exec(session -> {
-                        System.out.println(session.getString("responseBody"));
-                        return session;
-                    });
+                            .check(jmesPath("rating").isEL("#{rating}")),
+                            "Created game"));
 
     // gameId and gameName come from csvFeeder
     private static final ChainBuilder getGameByIdCsv =
@@ -119,22 +87,18 @@ public class VideoGameDbFeeders extends BaseSimulation {
             scenario("Video Game Db With Feeders")
                     .exec(authenticate)
                     // we have only 4 lines in CSV, so the circular feeder will start from the beginning and use ID = 1 again
+                    // every record is dropped after its request, the user doesn't carry the last one of each feeder
                     .repeat(5)
-                    .on(exec(getGameByIdCsv).pause(1))
+                    .on(exec(scoped(getGameByIdCsv)).pause(1))
                     // we have 10 entries in JSON, so no repetition will occur
                     .repeat(10)
-                    .on(exec(getGameByIdJson).pause(1))
+                    .on(exec(scoped(getGameByIdJson)).pause(1))
                     .repeat(5)
-                    .on(exec(getGameByIdCustom).pause(1))
+                    .on(exec(scoped(getGameByIdCustom)).pause(1))
                     .repeat(5)
-                    .on(exec(createNewGame).pause(1));
-
-    private static LocalDate randomDate() {
-        int hundredYears = 100 * 365;
-        return LocalDate.ofEpochDay(ThreadLocalRandom.current().nextInt(-hundredYears, hundredYears));
-    }
+                    .on(exec(scoped(createNewGame)).pause(1));
 
     public VideoGameDbFeeders() {
-        setUp(scenario.injectOpen(atOnceUsers(1))).protocols(httpProtocol);
+        setUp(scenario, LoadProfile.fromSystemProperties("single-user")).protocols(httpProtocol);
     }
 }
@@ -1,24 +1,22 @@
 package videogamedb.finalsimulation;
 
+import feeders.MappedFileFeeder;
 import io.gatling.javaapi.core.ChainBuilder;
-import io.gatling.javaapi.core.FeederBuilder;
 import io.gatling.javaapi.core.ScenarioBuilder;
 import io.gatling.javaapi.http.HttpProtocolBuilder;
 import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
+
+import java.util.Iterator;
+import java.util.Map;
 
 import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
-import static io.gatling.javaapi.core.CoreDsl.ElFileBody;
-import static io.gatling.javaapi.core.CoreDsl.atOnceUsers;
 import static io.gatling.javaapi.core.CoreDsl.bodyString;
-import static io.gatling.javaapi.core.CoreDsl.constantUsersPerSec;
+import static io.gatling.javaapi.core.CoreDsl.doIf;
 import static io.gatling.javaapi.core.CoreDsl.exec;
 import static io.gatling.javaapi.core.CoreDsl.feed;
 import static io.gatling.javaapi.core.CoreDsl.jmesPath;
-import static io.gatling.javaapi.core.CoreDsl.jsonFile;
-import static io.gatling.javaapi.core.CoreDsl.nothingFor;
-import static io.gatling.javaapi.core.CoreDsl.rampUsersPerSec;
-import static io.gatling.javaapi.core.CoreDsl.scenario;
-import static io.gatling.javaapi.http.HttpDsl.http;
+import static videogamedb.scriptfundamentals.TemplateBodies.JsonTemplateBody;
 
 @SuppressWarnings("unused")
 public class VideoGameDbFullTest extends BaseSimulation {
@@ -27,19 +25,24 @@ public class VideoGameDbFullTest extends BaseSimulation {
     private static final HttpProtocolBuilder httpProtocol = buildHttpProtocol();
 
     // RUNTIME PARAMETERS
+    // USERS, RAMP_DURATION and TEST_DURATION are read by profiles/final-simulation.conf; the burst of 2 x USERS and
+    // the ramp-down over 2 x RAMP_DURATION follow them unless PEAK_USERS or RAMP_DOWN_DURATION are set
     private static final int USER_COUNT = Integer.parseInt(System.getProperty("USERS", "5"));
     private static final int RAMP_DURATION = Integer.parseInt(System.getProperty("RAMP_DURATION", "10"));
-    private static final int TEST_DURATION = Integer.parseInt(System.getProperty("TEST_DURATION", "30"));
+    private static final LoadProfile loadProfile = LoadProfile.fromSystemProperties("final-simulation", Map.of(
+            "FINAL_PEAK_USERS", String.valueOf(USER_COUNT * 2),
+            "FINAL_RAMP_DOWN_DURATION", String.valueOf(RAMP_DURATION * 2)));
 
     // FEEDER FOR TEST - CSV, JSON etc.
-    private static final FeederBuilder.FileBased<Object> jsonFeeder = jsonFile("feeders/gameJsonFile.json").random();
+    // memory-mapped, so GAMES_FILE can point at production-size data sets without loading them onto the heap
+    private static final Iterator<Map<String, Object>> jsonFeeder =
+            MappedFileFeeder.json(System.getProperty("GAMES_FILE", "feeders/gameJsonFile.json")).random();
 
     // BEFORE BLOCK
     @Override
     public void before() {
-        System.out.printf("Running test with %d users%n", USER_COUNT);
-        System.out.printf("Ramping users over %d seconds%n", RAMP_DURATION);
-        System.out.printf("Total test duration: %d seconds%n", TEST_DURATION);
+        super.before();
+        DEBUG.log("Running load profile " + loadProfile);
     }
 
     // HTTP CALLS
@@ -52,18 +55,23 @@ public class VideoGameDbFullTest extends BaseSimulation {
                     .exec(http("Create New Game - #{name}")
                             .post(VIDEO_GAME_ENDPOINT.getName())
                             .header(AUTH_HEADER, getAuthValue())
-                            .body(ElFileBody("feeders/bodies/newGameTemplate.json")).asJson());
+                            .body(JsonTemplateBody("feeders/bodies/newGameTemplate.json")).asJson()
+                            .check(jmesPath("id").ofLong().optional().saveAs(CREATED_GAME_ID_KEY)))
+                    .exec(probeVisibility)
+                    .exec(queueCreatedGameForCleanup);
 
     private static final ChainBuilder getLastPostedGameById =
             exec(http("Get Last Posted Game by ID - #{name}")
                     .get(VIDEO_GAME_ENDPOINT.getName() + "/#{id}")
                     .check(jmesPath("name").isEL("#{name}")));
 
+    // only with CLEANUP=inline, otherwise GameCleanup deletes the game off the measured path
     private static final ChainBuilder deleteLastPostedGame =
-            exec(http("Delete game - #{name}")
-                    .delete(VIDEO_GAME_ENDPOINT.getName() + "/#{id}")
-                    .header(AUTH_HEADER, getAuthValue())
-                    .check(bodyString().is("Video game deleted")));
+            doIf(session -> CLEANUP.inline()).then(
+                    exec(http("Delete game - #{name}")
+                            .delete(VIDEO_GAME_ENDPOINT.getName() + "/#{id}")
+                            .header(AUTH_HEADER, getAuthValue())
+                            .check(bodyString().is("Video game deleted"))));
 
     // SCENARIO OR USER JOURNEY
     // 1. Get all video games
@@ -97,15 +105,7 @@ public class VideoGameDbFullTest extends BaseSimulation {
 
     // LOAD SIMULATION
     public VideoGameDbFullTest() {
-        setUp(
-                myScenario.injectOpen(
-                        nothingFor(5),
-                        rampUsersPerSec(1).to(USER_COUNT).during(RAMP_DURATION),
-                        atOnceUsers(USER_COUNT * 2),
-                        constantUsersPerSec(USER_COUNT).during(TEST_DURATION),
-                        rampUsersPerSec(USER_COUNT).to(1).during(RAMP_DURATION * 2L)
-                ).protocols(httpProtocol)
-        );
+        setUp(myScenario, loadProfile).protocols(httpProtocol);
     }
 
 //    public VideoGameDbFullTest() {
@@ -120,7 +120,8 @@ public class VideoGameDbFullTest extends BaseSimulation {
     // AFTER BLOCK
     @Override
     public void after() {
-        System.out.println("Stress test completed");
+        super.after();
+        DEBUG.log("Stress test completed");
     }
 
 }
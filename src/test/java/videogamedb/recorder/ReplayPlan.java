@@ -0,0 +1,180 @@
+package videogamedb.recorder;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A recording compiled once into the requests every replaying user sends: bodies are read into byte arrays and
+ * identical header sets share one map, so the plan costs the same for one user or a hundred thousand.
+ * <p>
+ * Loading swaps what only made sense during the capture:
+ * <ul>
+ *   <li>recorded {@code Bearer} tokens are dropped, the step is marked {@link Step#authorized()} and gets a current
+ *   token at run time;</li>
+ *   <li>numeric path segments become {@code #{replayId<recorded id>}} session attributes, drawn per user, so steps
+ *   that shared an id in the capture still share one;</li>
+ *   <li>headers tied to the recording host or client ({@code Origin}, {@code Referer}, {@code Cookie},
+ *   {@code Postman-Token}, ...) are dropped;</li>
+ *   <li>the path prefix of the target base URL ({@code /api}) is removed from the recorded paths.</li>
+ * </ul>
+ * Plans are written by {@link ReplayPlanExtractor} to {@code recorder/<name>/plan.conf}.
+ */
+public final class ReplayPlan {
+
+    public static final String PLAN_FILE = "plan.conf";
+
+    private static final String PLAN_DIRECTORY = "recorder/";
+    private static final String ID_ATTRIBUTE_PREFIX = "replayId";
+    private static final Pattern NUMERIC_SEGMENT = Pattern.compile("(?<=/)(\\d+)(?=/|\\?|$)");
+    private static final Set<String> DROPPED_HEADERS = Set.of(
+            "authorization", "cookie", "host", "content-length", "origin", "referer", "postman-token");
+
+    /**
+     * One request of the plan. {@code path} and {@code name} use the target's paths; {@code path} may hold
+     * {@code #{replayId...}} attributes, {@code name} shows them as {@code {id}}. The recorder's own request names
+     * ({@code request_0}, ...) say nothing about the request, so the name is always method and path.
+     */
+    public record Step(String name, String method, String path, Map<String, String> headers, byte[] body,
+                       boolean authorized, Duration pause) {
+    }
+
+    private final String name;
+    private final List<Step> steps;
+    private final List<String> idAttributes;
+
+    private ReplayPlan(String name, List<Step> steps, List<String> idAttributes) {
+        this.name = name;
+        this.steps = steps;
+        this.idAttributes = idAttributes;
+    }
+
+    /**
+     * Loads {@code recorder/<nameOrPath>/plan.conf} from the classpath, or the file {@code nameOrPath} when it
+     * exists. {@code basePath} is the path of the base URL the plan is replayed against, e.g. {@code /api}.
+     */
+    public static ReplayPlan load(String nameOrPath, String basePath) {
+        File file = new File(nameOrPath);
+        Config plan = file.isFile()
+                ? ConfigFactory.parseFile(file, ConfigParseOptions.defaults().setAllowMissing(false))
+                : ConfigFactory.parseResources(PLAN_DIRECTORY + nameOrPath + "/" + PLAN_FILE,
+                ConfigParseOptions.defaults().setAllowMissing(false));
+        try {
+            return compile(nameOrPath, plan.resolve(), basePath);
+        } catch (ConfigException e) {
+            throw new IllegalArgumentException("Invalid replay plan " + nameOrPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<Step> steps() {
+        return steps;
+    }
+
+    /**
+     * Session attributes standing for the recorded ids, one per distinct id.
+     */
+    public List<String> idAttributes() {
+        return idAttributes;
+    }
+
+    private static ReplayPlan compile(String name, Config plan, String basePath) {
+        Map<String, String> common = plan.hasPath("headers") ? headers(plan.getConfig("headers")) : Map.of();
+        Map<Map<String, String>, Map<String, String>> sharedHeaders = new HashMap<>();
+        Set<String> idAttributes = new LinkedHashSet<>();
+        List<Step> steps = new ArrayList<>();
+        for (Config step : plan.getConfigList("steps")) {
+            String method = step.getString("method").toUpperCase(Locale.ROOT);
+            String path = stripBasePath(step.getString("path"), basePath);
+
+            StringBuilder replayPath = new StringBuilder();
+            StringBuilder replayName = new StringBuilder(method).append(' ');
+            Matcher id = NUMERIC_SEGMENT.matcher(path);
+            int last = 0;
+            while (id.find()) {
+                String attribute = ID_ATTRIBUTE_PREFIX + id.group(1);
+                idAttributes.add(attribute);
+                replayPath.append(path, last, id.start()).append("#{").append(attribute).append('}');
+                replayName.append(path, last, id.start()).append("{id}");
+                last = id.end();
+            }
+            replayPath.append(path.substring(last));
+            replayName.append(path.substring(last));
+
+            Map<String, String> headers = new LinkedHashMap<>(common);
+            boolean authorized = false;
+            if (step.hasPath("headers")) {
+                for (Map.Entry<String, String> header : headers(step.getConfig("headers")).entrySet()) {
+                    String key = header.getKey().toLowerCase(Locale.ROOT);
+                    if (key.equals("authorization") && header.getValue().startsWith("Bearer ")) {
+                        authorized = true;
+                    } else if (!DROPPED_HEADERS.contains(key)) {
+                        headers.put(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            byte[] body = step.hasPath("body") ? readBody(step.getString("body")) : null;
+            Duration pause = step.hasPath("pause") ? step.getDuration("pause") : Duration.ZERO;
+            Map<String, String> stepHeaders = Map.copyOf(headers);
+            steps.add(new Step(replayName.toString(), method, replayPath.toString(),
+                    sharedHeaders.computeIfAbsent(stepHeaders, same -> same), body, authorized, pause));
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Replay plan " + name + " has no steps");
+        }
+        return new ReplayPlan(name, List.copyOf(steps), List.copyOf(idAttributes));
+    }
+
+    private static Map<String, String> headers(Config headers) {
+        Map<String, String> values = new LinkedHashMap<>();
+        // header names hold dashes and dots, so they are read as keys of the object rather than as paths
+        headers.root().forEach((key, value) -> values.put(key, String.valueOf(value.unwrapped())));
+        return values;
+    }
+
+    private static String stripBasePath(String path, String basePath) {
+        if (basePath == null || basePath.isEmpty() || basePath.equals("/")) {
+            return path;
+        }
+        String prefix = basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
+        return path.startsWith(prefix + "/") ? path.substring(prefix.length()) : path;
+    }
+
+    // body files are recorded as classpath resources, a file path is accepted for plans kept outside the build
+    private static byte[] readBody(String body) {
+        try (InputStream resource = ReplayPlan.class.getClassLoader().getResourceAsStream(body)) {
+            if (resource != null) {
+                return resource.readAllBytes();
+            }
+            Path file = Path.of(body);
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read replay body " + body, e);
+        }
+        throw new IllegalArgumentException("Replay body " + body + " not found");
+    }
+}
@@ -0,0 +1,147 @@
+package videogamedb.recorder;
+
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns a simulation generated by the Gatling Recorder into a {@link ReplayPlan} file, so a capture is replayed
+ * without editing the generated class. The plan keeps the recording as it is (tokens, ids, think times); the
+ * substitutions happen when {@link ReplayPlan} loads it.
+ * <p>
+ * Run once per recording:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=videogamedb.recorder.ReplayPlanExtractor \
+ *     -Dexec.args="src/test/java/videogamedb/recorder/RecordedSimulation.java"
+ * </pre>
+ * The plan is written to {@code src/test/resources/recorder/<class name in lower case>/plan.conf}, next to the
+ * request bodies the recorder saved, unless a second argument names the output file.
+ */
+public final class ReplayPlanExtractor {
+
+    private static final String STRING = "\"((?:[^\"\\\\]|\\\\.)*)\"";
+
+    private static final Pattern HEADER_MAP = Pattern.compile(
+            "Map<CharSequence, String>\\s+(\\w+)\\s*=\\s*Map\\.ofEntries\\((.*?)\\n\\s*\\);", Pattern.DOTALL);
+    private static final Pattern HEADER_ENTRY = Pattern.compile("Map\\.entry\\(\\s*" + STRING + "\\s*,\\s*" + STRING + "\\s*\\)");
+    private static final Pattern PROTOCOL_HEADER = Pattern.compile(
+            "\\.(acceptHeader|acceptEncodingHeader|acceptLanguageHeader|userAgentHeader|contentTypeHeader)\\(" + STRING + "\\)");
+    private static final Pattern SCENARIO_TOKEN = Pattern.compile(
+            "http\\(" + STRING + "\\)"
+                    + "|\\.(get|post|put|patch|delete|head|options)\\(" + STRING + "\\)"
+                    + "|\\.headers\\((\\w+)\\)"
+                    + "|\\.body\\((?:RawFileBody|ElFileBody)\\(" + STRING + "\\)\\)"
+                    + "|\\.pause\\((\\d+)\\)"
+                    + "|\\.pause\\(Duration\\.ofMillis\\((\\d+)\\)\\)");
+
+    private static final Map<String, String> PROTOCOL_HEADER_NAMES = Map.of(
+            "acceptHeader", "Accept",
+            "acceptEncodingHeader", "Accept-Encoding",
+            "acceptLanguageHeader", "Accept-Language",
+            "userAgentHeader", "User-Agent",
+            "contentTypeHeader", "Content-Type");
+
+    private ReplayPlanExtractor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ReplayPlanExtractor <RecordedClass.java> [plan.conf]");
+            System.exit(2);
+        }
+        Path source = Path.of(args[0]);
+        String className = source.getFileName().toString().replaceFirst("\\.java$", "");
+        Path target = args.length == 2
+                ? Path.of(args[1])
+                : Path.of("src/test/resources/recorder", className.toLowerCase(Locale.ROOT), ReplayPlan.PLAN_FILE);
+        Map<String, Object> plan = extract(Files.readString(source, StandardCharsets.UTF_8));
+        plan.put("source", className);
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, render(plan), StandardCharsets.UTF_8);
+        System.out.println("Wrote " + ((List<?>) plan.get("steps")).size() + " steps to " + target);
+    }
+
+    /**
+     * The plan of a generated simulation: protocol-level headers and the requests in order, each with its headers,
+     * body file and the pause that follows it.
+     */
+    static Map<String, Object> extract(String code) {
+        int scenarioStart = code.indexOf("scenario(");
+        if (scenarioStart < 0) {
+            throw new IllegalArgumentException("No scenario in the recorded simulation");
+        }
+        Map<String, Map<String, String>> headerMaps = new LinkedHashMap<>();
+        Matcher maps = HEADER_MAP.matcher(code);
+        while (maps.find()) {
+            Map<String, String> headers = new LinkedHashMap<>();
+            Matcher entry = HEADER_ENTRY.matcher(maps.group(2));
+            while (entry.find()) {
+                headers.put(unescape(entry.group(1)), unescape(entry.group(2)));
+            }
+            headerMaps.put(maps.group(1), headers);
+        }
+
+        Map<String, String> protocolHeaders = new LinkedHashMap<>();
+        Matcher protocol = PROTOCOL_HEADER.matcher(code.substring(0, scenarioStart));
+        while (protocol.find()) {
+            protocolHeaders.put(PROTOCOL_HEADER_NAMES.get(protocol.group(1)), unescape(protocol.group(2)));
+        }
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        Map<String, Object> step = null;
+        Matcher token = SCENARIO_TOKEN.matcher(code.substring(scenarioStart));
+        while (token.find()) {
+            if (token.group(1) != null) {
+                step = new LinkedHashMap<>();
+                step.put("name", unescape(token.group(1)));
+                steps.add(step);
+            } else if (step == null) {
+                throw new IllegalArgumentException("Request settings before the first http(...) at " + token.group());
+            } else if (token.group(2) != null) {
+                step.put("method", token.group(2).toUpperCase(Locale.ROOT));
+                step.put("path", unescape(token.group(3)));
+            } else if (token.group(4) != null) {
+                Map<String, String> headers = headerMaps.get(token.group(4));
+                if (headers == null) {
+                    throw new IllegalArgumentException("Unknown header map " + token.group(4));
+                }
+                step.put("headers", headers);
+            } else if (token.group(5) != null) {
+                step.put("body", unescape(token.group(5)));
+            } else if (token.group(6) != null) {
+                step.put("pause", token.group(6) + "s");
+            } else {
+                step.put("pause", token.group(7) + "ms");
+            }
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("No request in the recorded scenario");
+        }
+        Map<String, Object> plan = new LinkedHashMap<>();
+        plan.put("headers", protocolHeaders);
+        plan.put("steps", steps);
+        return plan;
+    }
+
+    private static String render(Map<String, Object> plan) {
+        return "# Generated by ReplayPlanExtractor from " + plan.get("source") + ", see ReplayPlan for how it is replayed\n"
+                + ConfigValueFactory.fromMap(plan).render(ConfigRenderOptions.defaults()
+                .setOriginComments(false)
+                .setJson(false));
+    }
+
+    private static String unescape(String literal) {
+        return literal.replaceAll("\\\\(.)", "$1");
+    }
+}
@@ -0,0 +1,110 @@
+package videogamedb.recorder;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import io.gatling.javaapi.http.HttpRequestActionBuilder;
+import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static data.EndpointEnum.AUTHENTICATE_ENDPOINT;
+import static io.gatling.javaapi.core.CoreDsl.ByteArrayBody;
+import static io.gatling.javaapi.core.CoreDsl.exec;
+import static io.gatling.javaapi.core.CoreDsl.jmesPath;
+
+/**
+ * Replays a recorded session, compiled by {@link ReplayPlan}, from many users: every user draws its own game ids,
+ * sends the recorded requests with a current token and waits the recorded think times scaled by
+ * {@code THINK_TIME_SCALE}.
+ * <p>
+ * The {@code replay} profile injects {@code TARGET_RPS / steps in the plan} users per second, so the plan runs at
+ * {@code TARGET_RPS} once the first users at the full rate are through it, one scaled plan duration after the ramp,
+ * with the think times kept. The constant rate therefore lasts the plan duration plus 60 s unless
+ * {@code TEST_DURATION} is set, and a {@code TEST_DURATION} shorter than the plan is rejected: such a run would end
+ * before it reaches {@code TARGET_RPS}.
+ */
+public class ReplaySimulation extends BaseSimulation {
+
+    // a name under src/test/resources/recorder (recordedsimulation, recordedsimulationproxy) or a plan.conf file
+    private static final ReplayPlan plan = ReplayPlan.load(
+            System.getProperty("REPLAY_PLAN", "recordedsimulation"), URI.create(BASE_URL).getPath());
+
+    // 0 replays without pauses, 0.5 halves the recorded think times
+    private static final double THINK_TIME_SCALE = Double.parseDouble(System.getProperty("THINK_TIME_SCALE", "1.0"));
+
+    private static final double TARGET_RPS = Double.parseDouble(System.getProperty("TARGET_RPS", "20"));
+
+    private static final HttpProtocolBuilder httpProtocol = buildHttpProtocol();
+
+    // the recorded think times of one replay, response times left out
+    private static final Duration PLAN_DURATION = plan.steps().stream()
+            .map(step -> scaled(step.pause()))
+            .reduce(Duration.ZERO, Duration::plus);
+
+    // USERS_PER_SEC overrides the rate derived from TARGET_RPS, TEST_DURATION and RAMP_DURATION are read by the profile
+    private static final LoadProfile loadProfile = LoadProfile.fromSystemProperties("replay", Map.of(
+            "REPLAY_RATE", String.valueOf(TARGET_RPS / plan.steps().size()),
+            "REPLAY_TEST_DURATION", String.valueOf(seconds(PLAN_DURATION) + 60)));
+
+    private static final ScenarioBuilder scenario = scenario("Replay " + plan.name())
+            .exec(replay(plan));
+
+    public ReplaySimulation() {
+        String testDuration = System.getProperty("TEST_DURATION");
+        if (testDuration != null && Long.parseLong(testDuration) < seconds(PLAN_DURATION)) {
+            throw new IllegalArgumentException("TEST_DURATION %s s is shorter than the %d s of plan %s, the run would end"
+                    .formatted(testDuration, seconds(PLAN_DURATION), plan.name()) + " before reaching TARGET_RPS");
+        }
+        setUp(scenario, loadProfile).protocols(httpProtocol);
+    }
+
+    private static ChainBuilder replay(ReplayPlan plan) {
+        // one draw per recorded id and user, so the update and the delete of the recorded game hit the same game
+        ChainBuilder chain = exec(session -> {
+            Map<String, Object> ids = new HashMap<>();
+            for (String attribute : plan.idAttributes()) {
+                ids.put(attribute, getRandomGameId());
+            }
+            return session.setAll(ids);
+        });
+        for (ReplayPlan.Step step : plan.steps()) {
+            chain = chain.exec(request(step));
+            Duration pause = scaled(step.pause());
+            if (!pause.isZero()) {
+                chain = chain.pause(pause);
+            }
+        }
+        return chain;
+    }
+
+    private static HttpRequestActionBuilder request(ReplayPlan.Step step) {
+        HttpRequestActionBuilder request = http(step.name())
+                .httpRequest(step.method(), step.path())
+                .headers(step.headers());
+        if (step.body() != null) {
+            request = request.body(ByteArrayBody(step.body()));
+        }
+        if (step.authorized()) {
+            request = request.header(AUTH_HEADER, getAuthValue());
+        }
+        // with per-user tokens the recorded login provides the token of the following steps
+        if (PER_USER_AUTH && step.method().equals("POST") && step.path().equals(AUTHENTICATE_ENDPOINT.getName())) {
+            request = request.check(jmesPath("token").saveAs(JWT_TOKEN_KEY));
+        }
+        return request;
+    }
+
+    private static Duration scaled(Duration pause) {
+        return Duration.ofNanos(Math.round(pause.toNanos() * THINK_TIME_SCALE));
+    }
+
+    private static long seconds(Duration duration) {
+        // rounded up, a plan of 80.5 s needs 81 s
+        return (duration.toMillis() + 999) / 1000;
+    }
+}
@@ -0,0 +1,106 @@
+package videogamedb.reporting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a {@code simulation.log} through memory-mapped windows of the file, so logs of any size are read without
+ * copying them onto the heap: a window is mapped at the record being read and replaced by the next one once a read
+ * runs past its end. Values are big-endian like {@code DataOutputStream} writes them; strings are Gatling's
+ * serialization of {@code java.lang.String}, see {@code videogamedb.distributed.SimulationLogMerger}.
+ * <p>
+ * Reading past the end of the file throws {@link EOFException}, which ends a log whose last record was cut short.
+ */
+final class MappedLogReader {
+
+    private static final long WINDOW = 64L << 20;
+    private static final Charset UTF16 = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+            ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    MappedLogReader(FileChannel channel, long position) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.position = position;
+    }
+
+    long position() {
+        return position;
+    }
+
+    boolean atEnd() {
+        return position >= size;
+    }
+
+    byte readByte() throws IOException {
+        byte value = window(1).get(offset());
+        position += 1;
+        return value;
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    int readInt() throws IOException {
+        int value = window(4).getInt(offset());
+        position += 4;
+        return value;
+    }
+
+    long readLong() throws IOException {
+        long value = window(8).getLong(offset());
+        position += 8;
+        return value;
+    }
+
+    void skip(long bytes) throws IOException {
+        if (position + bytes > size) {
+            throw new EOFException();
+        }
+        position += bytes;
+    }
+
+    String readText() throws IOException {
+        int length = readInt();
+        if (length == 0) {
+            return "";
+        }
+        byte[] value = new byte[length];
+        window(length + 1).get(offset(), value);
+        position += length;
+        return new String(value, readByte() == 0 ? StandardCharsets.ISO_8859_1 : UTF16);
+    }
+
+    void skipText() throws IOException {
+        int length = readInt();
+        if (length > 0) {
+            skip(length + 1L);
+        }
+    }
+
+    private int offset() {
+        return (int) (position - windowStart);
+    }
+
+    private MappedByteBuffer window(int bytes) throws IOException {
+        if (position + bytes > size) {
+            throw new EOFException();
+        }
+        if (window == null || position < windowStart || position + bytes > windowStart + window.capacity()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, Math.max(WINDOW, bytes)));
+        }
+        return window;
+    }
+}
@@ -0,0 +1,183 @@
+package videogamedb.reporting;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes a {@link StreamingReport.Summary} as {@code summary.json}, for scripts, and as {@code index.html}, a single
+ * page without scripts or external resources: the request table, the errors and three SVG line charts over the run,
+ * requests per second, response time percentiles and active users. Both are a few hundred kilobytes at most, whatever
+ * the size of the log.
+ */
+final class ReportWriter {
+
+    private static final int WIDTH = 960;
+    private static final int HEIGHT = 220;
+    private static final int MARGIN = 48;
+
+    private record Series(String label, String color, ToDoubleFunction<StreamingReport.TimelinePoint> value) {
+    }
+
+    private ReportWriter() {
+    }
+
+    static void write(StreamingReport.Summary summary, Path folder) {
+        try {
+            Files.createDirectories(folder);
+            Files.writeString(folder.resolve("summary.json"), json(summary));
+            try (BufferedWriter html = Files.newBufferedWriter(folder.resolve("index.html"))) {
+                html.write(html(summary));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the report to " + folder, e);
+        }
+    }
+
+    static String json(StreamingReport.Summary summary) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"simulation\": ").append(quote(summary.simulation())).append(",\n");
+        json.append("  \"start\": ").append(quote(Instant.ofEpochMilli(summary.start()).toString())).append(",\n");
+        json.append("  \"durationMillis\": ").append(summary.durationMillis()).append(",\n");
+        json.append("  \"records\": ").append(summary.records()).append(",\n");
+        json.append("  \"users\": ").append(summary.users()).append(",\n");
+        json.append("  \"global\": ").append(json(summary.global())).append(",\n");
+        json.append("  \"requests\": [\n").append(summary.requests().stream()
+                .map(request -> "    " + json(request))
+                .collect(Collectors.joining(",\n"))).append("\n  ],\n");
+        json.append("  \"timeline\": [\n").append(summary.timeline().stream()
+                .map(point -> String.format(Locale.ROOT,
+                        "    {\"second\": %d, \"rps\": %.2f, \"failedRps\": %.2f, \"p50\": %d, \"p95\": %d, \"p99\": %d, \"activeUsers\": %d}",
+                        point.second(), point.rps(), point.failedRps(), point.p50(), point.p95(), point.p99(),
+                        point.activeUsers()))
+                .collect(Collectors.joining(",\n"))).append("\n  ],\n");
+        json.append("  \"errors\": {").append(summary.errors().entrySet().stream()
+                .map(error -> "\n    " + quote(error.getKey()) + ": " + error.getValue())
+                .collect(Collectors.joining(","))).append(summary.errors().isEmpty() ? "}\n" : "\n  }\n");
+        return json.append("}\n").toString();
+    }
+
+    private static String json(StreamingReport.RequestSummary request) {
+        return String.format(Locale.ROOT,
+                "{\"name\": %s, \"count\": %d, \"failed\": %d, \"min\": %d, \"p50\": %d, \"p75\": %d, \"p95\": %d, \"p99\": %d, \"max\": %d, \"mean\": %.1f, \"rps\": %.2f}",
+                quote(request.name()), request.count(), request.failed(), request.min(), request.p50(), request.p75(),
+                request.p95(), request.p99(), request.max(), request.mean(), request.rps());
+    }
+
+    private static String html(StreamingReport.Summary summary) {
+        StringBuilder html = new StringBuilder("""
+                <!DOCTYPE html>
+                <html><head><meta charset="utf-8"><title>%s</title>
+                <style>
+                body { font-family: sans-serif; margin: 24px; color: #222; }
+                table { border-collapse: collapse; } td, th { padding: 4px 10px; text-align: right; }
+                td:first-child, th:first-child { text-align: left; } tr:nth-child(even) { background: #f4f4f4; }
+                .ko { color: #c0392b; } svg { display: block; margin: 8px 0 24px; }
+                </style></head><body>
+                """.formatted(escape(summary.simulation())));
+        html.append("<h1>").append(escape(summary.simulation())).append("</h1>\n");
+        html.append(String.format(Locale.ROOT, "<p>Started %s, %d s, %d users, %d records.</p>%n",
+                Instant.ofEpochMilli(summary.start()), summary.durationMillis() / 1000, summary.users(),
+                summary.records()));
+        html.append("<table><tr><th>Request</th><th>Count</th><th>KO</th><th>Min</th><th>p50</th><th>p75</th>")
+                .append("<th>p95</th><th>p99</th><th>Max</th><th>Mean</th><th>Req/s</th></tr>\n");
+        Stream.concat(summary.requests().stream(), Stream.of(summary.global())).forEach(request ->
+                html.append(String.format(Locale.ROOT,
+                        "<tr><td>%s</td><td>%d</td><td%s>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%.1f</td><td>%.1f</td></tr>%n",
+                        escape(request.name()), request.count(), request.failed() > 0 ? " class=\"ko\"" : "",
+                        request.failed(), request.min(), request.p50(), request.p75(), request.p95(), request.p99(),
+                        request.max(), request.mean(), request.rps())));
+        html.append("</table>\n<p>Response times in milliseconds.</p>\n");
+        if (!summary.errors().isEmpty()) {
+            html.append("<h2>Errors</h2>\n<table><tr><th>Message</th><th>Count</th></tr>\n");
+            for (Map.Entry<String, Long> error : summary.errors().entrySet()) {
+                html.append("<tr><td>").append(escape(error.getKey())).append("</td><td>").append(error.getValue())
+                        .append("</td></tr>\n");
+            }
+            html.append("</table>\n");
+        }
+        List<StreamingReport.TimelinePoint> timeline = summary.timeline();
+        html.append("<h2>Requests per second</h2>\n").append(chart(timeline, List.of(
+                new Series("all", "#2c7fb8", StreamingReport.TimelinePoint::rps),
+                new Series("KO", "#c0392b", StreamingReport.TimelinePoint::failedRps))));
+        html.append("<h2>Response time percentiles (ms)</h2>\n").append(chart(timeline, List.of(
+                new Series("p50", "#41ab5d", StreamingReport.TimelinePoint::p50),
+                new Series("p95", "#fd8d3c", StreamingReport.TimelinePoint::p95),
+                new Series("p99", "#c0392b", StreamingReport.TimelinePoint::p99))));
+        html.append("<h2>Active users</h2>\n").append(chart(timeline, List.of(
+                new Series("users", "#756bb1", StreamingReport.TimelinePoint::activeUsers))));
+        return html.append("</body></html>\n").toString();
+    }
+
+    private static String chart(List<StreamingReport.TimelinePoint> timeline, List<Series> series) {
+        double maxValue = 0;
+        for (Series line : series) {
+            for (StreamingReport.TimelinePoint point : timeline) {
+                maxValue = Math.max(maxValue, line.value().applyAsDouble(point));
+            }
+        }
+        double top = maxValue <= 0 ? 1 : maxValue;
+        long lastSecond = timeline.isEmpty() ? 1 : Math.max(1, timeline.get(timeline.size() - 1).second());
+        int plotWidth = WIDTH - 2 * MARGIN;
+        int plotHeight = HEIGHT - 2 * MARGIN;
+        StringBuilder svg = new StringBuilder(String.format(Locale.ROOT,
+                "<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\" font-size=\"11\">%n", WIDTH, HEIGHT));
+        svg.append(String.format(Locale.ROOT,
+                "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"#ccc\"/>%n",
+                MARGIN, MARGIN, plotWidth, plotHeight));
+        svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">%.0f</text>%n",
+                MARGIN - 4, MARGIN + 4, top));
+        svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">0</text>%n",
+                MARGIN - 4, MARGIN + plotHeight));
+        svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">%d s</text>%n",
+                MARGIN + plotWidth, MARGIN + plotHeight + 16, lastSecond));
+        int legend = MARGIN;
+        for (Series line : series) {
+            String points = timeline.stream()
+                    .map(point -> String.format(Locale.ROOT, "%.1f,%.1f",
+                            MARGIN + plotWidth * (double) point.second() / lastSecond,
+                            MARGIN + plotHeight * (1 - line.value().applyAsDouble(point) / top)))
+                    .collect(Collectors.joining(" "));
+            svg.append(String.format(Locale.ROOT,
+                    "<polyline fill=\"none\" stroke=\"%s\" stroke-width=\"1.5\" points=\"%s\"/>%n", line.color(), points));
+            svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" fill=\"%s\">%s</text>%n",
+                    legend, MARGIN - 12, line.color(), escape(line.label())));
+            legend += 60;
+        }
+        return svg.append("</svg>\n").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
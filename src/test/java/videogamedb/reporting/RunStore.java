@@ -0,0 +1,537 @@
+package videogamedb.reporting;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Store of past runs, so today's run can be compared with last week's without opening two HTML reports. Each run is
+ * kept as one histogram per request name and per second of the run, bucketed by response end like Gatling's
+ * responses per second, which is enough to diff any two runs over any window of their timeline.
+ * <p>
+ * The store is a folder of two append-only files:
+ * <ul>
+ *     <li>{@code runs.bin}, one entry per run: a header (magic, simulation class, git commit, load profile, start in
+ *     epoch milliseconds), then one block per second with responses ({@code int} second, {@code int} entries, and per
+ *     entry a name reference, the KO count and the HdrHistogram of the response times in its compressed encoding),
+ *     then {@code -1}. Names are cached like in {@code simulation.log}: a positive reference introduces a name, written
+ *     after it, and a negative one refers back to it;</li>
+ *     <li>{@code index.tsv}, one line per run: id, start, simulation, commit, profile, offset and length of the entry.
+ *     The line is appended once the entry is complete, so an entry cut short by a crash is never read.</li>
+ * </ul>
+ * A run is read from its {@code simulation.log} in one pass; seconds more than a minute behind the latest response are
+ * written out, and the rare response logged later than that is counted in the oldest second still open.
+ * <p>
+ * Simulations add their runs only with {@code -DRUN_STORE=true} ({@code run-store}) or {@code -DRUN_STORE=<folder>}.
+ * Command line, with {@code RUN_STORE} the store folder (default {@code run-store}):
+ * <pre>
+ * list [simulation]
+ * add &lt;run folder|simulation.log|latest&gt; [--commit sha] [--profile name]
+ * diff &lt;baseline&gt; &lt;candidate&gt; [--simulation name] [--from s] [--to s] [--tsv] [--max-p99-increase ms]
+ * </pre>
+ * Runs are selected by id, {@code latest}, {@code latest~N} (N runs before the latest) or {@code @commit} (the latest run
+ * of a commit, by prefix), among the runs of {@code --simulation} when given. {@code --from} and {@code --to} restrict
+ * both runs to a window in seconds from their start, to leave out a ramp-up for instance. With
+ * {@code --max-p99-increase}, the diff exits with 2 when the p99 of a request grew by more than that.
+ */
+public final class RunStore {
+
+    private static final int MAGIC = 0x52554E31;
+    private static final byte REQUEST = 1;
+    private static final byte USER = 2;
+    private static final byte GROUP = 3;
+    private static final byte ERROR = 4;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int SLACK_SECONDS = 60;
+    private static final String INDEX = "index.tsv";
+    private static final String DATA = "runs.bin";
+    private static final Path DEFAULT_FOLDER = Path.of("run-store");
+    private static final String NONE = "none";
+    public static final String ALL_REQUESTS = "All requests";
+
+    public record RunInfo(int id, long start, String simulation, String commit, String profile, long offset,
+                          long length) {
+
+        String simpleName() {
+            return simulation.substring(simulation.lastIndexOf('.') + 1);
+        }
+
+        @Override
+        public String toString() {
+            return "#%d %s %s @%s (%s)".formatted(id, Instant.ofEpochMilli(start), simpleName(), commit, profile);
+        }
+    }
+
+    /**
+     * One request name of a run over a window of it; {@code rps} is over the seconds from its first to its last response.
+     */
+    public record RequestStats(String name, long count, long failed, double rps, long p50, long p95, long p99,
+                               long max) {
+    }
+
+    private static final class Second {
+        private final Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+        private int failed;
+    }
+
+    private final Path folder;
+
+    private RunStore(Path folder) {
+        this.folder = folder;
+    }
+
+    public static RunStore open(Path folder) {
+        return new RunStore(folder);
+    }
+
+    /**
+     * The store runs are added to: {@code run-store} with {@code -DRUN_STORE=true}, the folder {@code RUN_STORE} names
+     * otherwise, and none when it is not set.
+     */
+    public static RunStore fromSystemProperties() {
+        return fromSystemProperties(NONE);
+    }
+
+    private static RunStore fromSystemProperties(String unset) {
+        String folder = System.getProperty("RUN_STORE", unset);
+        return open(folder.equalsIgnoreCase("true") ? DEFAULT_FOLDER : Path.of(folder));
+    }
+
+    // -DRUN_STORE=none, or no RUN_STORE, keeps runs out of the store
+    public boolean enabled() {
+        return !folder.toString().equals(NONE);
+    }
+
+    public List<RunInfo> runs() {
+        Path index = folder.resolve(INDEX);
+        if (!Files.isRegularFile(index)) {
+            return List.of();
+        }
+        try {
+            List<RunInfo> runs = new ArrayList<>();
+            for (String line : Files.readAllLines(index)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 7) {
+                    runs.add(new RunInfo(Integer.parseInt(fields[0]), Instant.parse(fields[1]).toEpochMilli(),
+                            fields[2], fields[3], fields[4], Long.parseLong(fields[5]), Long.parseLong(fields[6])));
+                }
+            }
+            return runs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + index, e);
+        }
+    }
+
+    /**
+     * Adds the run logged in {@code simulationLog} and returns it.
+     */
+    public synchronized RunInfo add(Path simulationLog, String commit, String profile) {
+        Path data = folder.resolve(DATA);
+        try {
+            Files.createDirectories(folder);
+            long offset = Files.isRegularFile(data) ? Files.size(data) : 0;
+            String simulation;
+            long start;
+            try (FileChannel channel = FileChannel.open(simulationLog, StandardOpenOption.READ);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(data, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16))) {
+                MappedLogReader in = new MappedLogReader(channel, 0);
+                StreamingReport.Header header = StreamingReport.readHeader(in);
+                simulation = header.simulation();
+                start = header.start();
+                out.writeInt(MAGIC);
+                out.writeUTF(simulation);
+                out.writeUTF(clean(commit));
+                out.writeUTF(clean(profile));
+                out.writeLong(start);
+                writeSeconds(in, out);
+                out.writeInt(-1);
+            }
+            long length = Files.size(data) - offset;
+            int id = runs().stream().mapToInt(RunInfo::id).max().orElse(0) + 1;
+            RunInfo run = new RunInfo(id, start, simulation, clean(commit), clean(profile), offset, length);
+            Files.writeString(folder.resolve(INDEX), "%d\t%s\t%s\t%s\t%s\t%d\t%d%n".formatted(id,
+                            Instant.ofEpochMilli(start), clean(simulation), run.commit(), run.profile(), offset, length),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return run;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not add " + simulationLog + " to the run store " + folder, e);
+        }
+    }
+
+    private static void writeSeconds(MappedLogReader in, DataOutputStream out) throws IOException {
+        TreeMap<Integer, Map<String, Second>> open = new TreeMap<>();
+        Map<Integer, String> logCache = new HashMap<>();
+        Map<String, Integer> names = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        try {
+            while (!in.atEnd()) {
+                int header = in.readByte();
+                switch (header) {
+                    case USER -> in.skip(4 + 1 + 4);
+                    case REQUEST -> {
+                        StreamingReport.skipGroups(in, logCache);
+                        String name = StreamingReport.readCachedText(in, logCache);
+                        int start = in.readInt();
+                        int end = in.readInt();
+                        boolean ok = in.readBoolean();
+                        StreamingReport.readCachedText(in, logCache);
+                        int second = Math.max(0, end / 1000);
+                        if (!open.isEmpty() && second < open.firstKey()) {
+                            second = open.firstKey();
+                        }
+                        Second stats = open.computeIfAbsent(second, key -> new HashMap<>())
+                                .computeIfAbsent(name, key -> new Second());
+                        stats.histogram.recordValue(Math.max(0, end - start));
+                        if (!ok) {
+                            stats.failed++;
+                        }
+                        while (open.firstKey() < open.lastKey() - SLACK_SECONDS) {
+                            Map.Entry<Integer, Map<String, Second>> oldest = open.pollFirstEntry();
+                            buffer = writeSecond(out, oldest.getKey(), oldest.getValue(), names, buffer);
+                        }
+                    }
+                    case GROUP -> {
+                        StreamingReport.skipGroups(in, logCache);
+                        in.skip(4 + 4 + 4 + 1);
+                    }
+                    case ERROR -> {
+                        StreamingReport.readCachedText(in, logCache);
+                        in.skip(4);
+                    }
+                    default -> throw new IOException("Unknown record header " + header + " at " + (in.position() - 1));
+                }
+            }
+        } catch (EOFException e) {
+            // a truncated last record, the run was killed while writing it
+        }
+        for (Map.Entry<Integer, Map<String, Second>> second : open.entrySet()) {
+            buffer = writeSecond(out, second.getKey(), second.getValue(), names, buffer);
+        }
+    }
+
+    private static ByteBuffer writeSecond(DataOutputStream out, int second, Map<String, Second> requests,
+                                          Map<String, Integer> names, ByteBuffer buffer) throws IOException {
+        out.writeInt(second);
+        out.writeInt(requests.size());
+        for (Map.Entry<String, Second> request : requests.entrySet()) {
+            Integer index = names.get(request.getKey());
+            if (index == null) {
+                index = names.size() + 1;
+                names.put(request.getKey(), index);
+                out.writeInt(index);
+                out.writeUTF(request.getKey());
+            } else {
+                out.writeInt(-index);
+            }
+            out.writeInt(request.getValue().failed);
+            Histogram histogram = request.getValue().histogram;
+            if (buffer.capacity() < histogram.getNeededByteBufferCapacity()) {
+                buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            }
+            buffer.clear();
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+            out.writeInt(length);
+            out.write(buffer.array(), 0, length);
+        }
+        return buffer;
+    }
+
+    /**
+     * Stats per request name of {@code run}, plus {@link #ALL_REQUESTS}, over the seconds {@code from} (inclusive) to
+     * {@code to} (exclusive) from its start.
+     */
+    public Map<String, RequestStats> stats(RunInfo run, int from, int to) {
+        Map<String, Histogram> histograms = new TreeMap<>();
+        Map<String, long[]> counters = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(folder.resolve(DATA), StandardOpenOption.READ)) {
+            channel.position(run.offset());
+            InputStream entry = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            DataInputStream in = new DataInputStream(entry);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("No run at offset " + run.offset());
+            }
+            in.readUTF();
+            in.readUTF();
+            in.readUTF();
+            in.readLong();
+            Map<Integer, String> names = new HashMap<>();
+            byte[] bytes = new byte[1024];
+            for (int second = in.readInt(); second >= 0; second = in.readInt()) {
+                boolean inWindow = second >= from && second < to;
+                for (int i = in.readInt(); i > 0; i--) {
+                    int index = in.readInt();
+                    String name = index > 0 ? in.readUTF() : names.get(-index);
+                    if (index > 0) {
+                        names.put(index, name);
+                    }
+                    int failed = in.readInt();
+                    int length = in.readInt();
+                    if (bytes.length < length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                    if (!inWindow) {
+                        continue;
+                    }
+                    Histogram histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes, 0, length), 0);
+                    for (String key : List.of(name, ALL_REQUESTS)) {
+                        histograms.computeIfAbsent(key, k -> new Histogram(SIGNIFICANT_DIGITS)).add(histogram);
+                        // failed, first second, last second
+                        long[] counter = counters.computeIfAbsent(key, k -> new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE});
+                        counter[0] += failed;
+                        counter[1] = Math.min(counter[1], second);
+                        counter[2] = Math.max(counter[2], second);
+                    }
+                }
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Could not read run " + run.id() + " from the run store " + folder, e);
+        }
+        Map<String, RequestStats> stats = new TreeMap<>();
+        histograms.forEach((name, histogram) -> {
+            long[] counter = counters.get(name);
+            stats.put(name, new RequestStats(name, histogram.getTotalCount(), counter[0],
+                    histogram.getTotalCount() / (double) (counter[2] - counter[1] + 1),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(95),
+                    histogram.getValueAtPercentile(99), histogram.getMaxValue()));
+        });
+        return stats;
+    }
+
+    /**
+     * The run {@code selector} names, among the runs of {@code simulation} (simple or full class name) unless null.
+     */
+    public RunInfo select(String selector, String simulation) {
+        List<RunInfo> runs = runs().stream()
+                .filter(run -> simulation == null || run.simulation().equals(simulation)
+                        || run.simpleName().equals(simulation))
+                .toList();
+        if (runs.isEmpty()) {
+            throw new IllegalArgumentException("No run in the run store " + folder
+                    + (simulation == null ? "" : " for " + simulation));
+        }
+        if (selector.startsWith("latest")) {
+            int back = selector.startsWith("latest~") ? Integer.parseInt(selector.substring("latest~".length())) : 0;
+            if (back >= runs.size()) {
+                throw new IllegalArgumentException("Only " + runs.size() + " runs to go back from");
+            }
+            return runs.get(runs.size() - 1 - back);
+        }
+        if (selector.startsWith("@")) {
+            String commit = selector.substring(1);
+            for (int i = runs.size() - 1; i >= 0; i--) {
+                if (runs.get(i).commit().startsWith(commit)) {
+                    return runs.get(i);
+                }
+            }
+            throw new IllegalArgumentException("No run of commit " + commit);
+        }
+        int id = Integer.parseInt(selector);
+        return runs.stream().filter(run -> run.id() == id).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No run " + id));
+    }
+
+    /**
+     * Percentiles and throughput of every request name of both runs, candidate against baseline, in milliseconds.
+     */
+    public static String diff(RunInfo baseline, Map<String, RequestStats> baselineStats, RunInfo candidate,
+                              Map<String, RequestStats> candidateStats, boolean tsv) {
+        TreeSet<String> names = new TreeSet<>(baselineStats.keySet());
+        names.addAll(candidateStats.keySet());
+        names.remove(ALL_REQUESTS);
+        List<String> ordered = new ArrayList<>(names);
+        ordered.add(ALL_REQUESTS);
+        StringBuilder diff = new StringBuilder();
+        if (tsv) {
+            diff.append("request\tmetric\tbaseline\tcandidate\tdelta\n");
+        } else {
+            diff.append("baseline  ").append(baseline).append('\n')
+                    .append("candidate ").append(candidate).append('\n')
+                    .append(String.format(Locale.ROOT, "  %-32s %-6s %10s %10s %10s%n", "request", "metric", "baseline",
+                            "candidate", "delta"));
+        }
+        for (String name : ordered) {
+            RequestStats before = baselineStats.get(name);
+            RequestStats after = candidateStats.get(name);
+            for (String metric : List.of("count", "KO", "rps", "p50", "p95", "p99", "max")) {
+                double a = value(before, metric);
+                double b = value(after, metric);
+                String delta = Double.isNaN(a) || Double.isNaN(b) ? "" : metric.equals("rps") || metric.equals("count")
+                        ? String.format(Locale.ROOT, "%+.1f%%", a == 0 ? 0 : 100 * (b - a) / a)
+                        : String.format(Locale.ROOT, "%+.0f", b - a);
+                if (tsv) {
+                    diff.append(String.format(Locale.ROOT, "%s\t%s\t%s\t%s\t%s%n", name, metric, format(a, metric),
+                            format(b, metric), delta));
+                } else {
+                    diff.append(String.format(Locale.ROOT, "  %-32s %-6s %10s %10s %10s%n",
+                            metric.equals("count") ? (name.length() > 32 ? name.substring(0, 29) + "..." : name) : "",
+                            metric, format(a, metric), format(b, metric), delta));
+                }
+            }
+        }
+        return diff.toString();
+    }
+
+    private static double value(RequestStats stats, String metric) {
+        if (stats == null) {
+            return Double.NaN;
+        }
+        return switch (metric) {
+            case "count" -> stats.count();
+            case "KO" -> stats.failed();
+            case "rps" -> stats.rps();
+            case "p50" -> stats.p50();
+            case "p95" -> stats.p95();
+            case "p99" -> stats.p99();
+            case "max" -> stats.max();
+            default -> throw new IllegalStateException(metric);
+        };
+    }
+
+    private static String format(double value, String metric) {
+        if (Double.isNaN(value)) {
+            return "-";
+        }
+        return metric.equals("rps") ? String.format(Locale.ROOT, "%.1f", value) : String.valueOf((long) value);
+    }
+
+    public static void main(String[] args) {
+        try {
+            // the command line reads run-store/ unless RUN_STORE names another store
+            System.exit(run(fromSystemProperties(DEFAULT_FOLDER.toString()), List.of(args)));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one command line against {@code store}; returns the process exit code.
+     */
+    public static int run(RunStore store, List<String> args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (Iterator<String> arg = args.iterator(); arg.hasNext(); ) {
+            String value = arg.next();
+            if (value.equals("--tsv")) {
+                options.put(value, "true");
+            } else if (value.startsWith("--")) {
+                options.put(value, arg.hasNext() ? arg.next() : "");
+            } else {
+                positional.add(value);
+            }
+        }
+        // options alone name no command
+        if (positional.isEmpty()) {
+            System.err.println("Usage: list [simulation] | add <run folder|simulation.log|latest> [--commit sha] "
+                    + "[--profile name] | diff <baseline> <candidate> [--simulation name] [--from s] [--to s] "
+                    + "[--tsv] [--max-p99-increase ms]");
+            return 1;
+        }
+        switch (positional.get(0)) {
+            case "list" -> {
+                String simulation = positional.size() > 1 ? positional.get(1) : null;
+                store.runs().stream()
+                        .filter(run -> simulation == null || run.simpleName().equals(simulation)
+                                || run.simulation().equals(simulation))
+                        .forEach(System.out::println);
+                return 0;
+            }
+            case "add" -> {
+                Path log = StreamingReport.resolveLog(positional.size() > 1 ? positional.get(1) : "latest",
+                        Path.of("target", "gatling"));
+                if (log == null) {
+                    System.err.println("No simulation.log found");
+                    return 1;
+                }
+                System.out.println("Added " + store.add(log, options.getOrDefault("--commit", gitCommit()),
+                        options.getOrDefault("--profile", "unknown")));
+                return 0;
+            }
+            case "diff" -> {
+                if (positional.size() != 3) {
+                    System.err.println("diff needs a baseline and a candidate run");
+                    return 1;
+                }
+                String simulation = options.get("--simulation");
+                RunInfo baseline = store.select(positional.get(1), simulation);
+                RunInfo candidate = store.select(positional.get(2), simulation);
+                int from = Integer.parseInt(options.getOrDefault("--from", "0"));
+                int to = Integer.parseInt(options.getOrDefault("--to", String.valueOf(Integer.MAX_VALUE)));
+                Map<String, RequestStats> before = store.stats(baseline, from, to);
+                Map<String, RequestStats> after = store.stats(candidate, from, to);
+                System.out.print(diff(baseline, before, candidate, after, options.containsKey("--tsv")));
+                if (options.containsKey("--max-p99-increase")) {
+                    long limit = Long.parseLong(options.get("--max-p99-increase"));
+                    List<String> regressions = after.values().stream()
+                            .filter(stats -> before.containsKey(stats.name())
+                                    && stats.p99() - before.get(stats.name()).p99() > limit)
+                            .map(RequestStats::name)
+                            .toList();
+                    if (!regressions.isEmpty()) {
+                        System.err.println("p99 grew by more than " + limit + " ms: " + String.join(", ", regressions));
+                        return 2;
+                    }
+                }
+                return 0;
+            }
+            default -> {
+                System.err.println("Unknown command " + positional.get(0));
+                return 1;
+            }
+        }
+    }
+
+    /**
+     * {@code GIT_COMMIT} when set, otherwise the commit checked out in the working directory, or {@code unknown}.
+     */
+    public static String gitCommit() {
+        String commit = System.getProperty("GIT_COMMIT");
+        if (commit != null) {
+            return commit;
+        }
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short=12", "HEAD").redirectErrorStream(true).start();
+            String output = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (git.waitFor(5, TimeUnit.SECONDS) && git.exitValue() == 0 && !output.isEmpty()) {
+                return output;
+            }
+        } catch (IOException e) {
+            // no git on this host
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "unknown";
+    }
+
+    // index fields are tab-separated, one run per line
+    private static String clean(String value) {
+        return value == null || value.isBlank() ? "unknown" : value.replaceAll("[\\t\\r\\n]", " ");
+    }
+}
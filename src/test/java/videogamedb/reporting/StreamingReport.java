@@ -0,0 +1,563 @@
+package videogamedb.reporting;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Report of a {@code simulation.log} built in bounded memory and on every core, for logs too big for Gatling's HTML
+ * report step, such as those of 12-hour soaks: the log is memory-mapped rather than read onto the heap, and what is
+ * kept of it does not grow with its size, only with the number of request names.
+ * <p>
+ * A first pass walks the records to cut the log into chunks of about {@code chunkBytes} at record boundaries, collecting
+ * the strings Gatling's cache defines into one map the chunks share read-only: Gatling never reuses a cache index, so
+ * the map of the whole log resolves the references of every chunk. The chunks are then aggregated on a fork-join pool, each into
+ * per-request HdrHistograms and a timeline of at most {@code points} buckets, and the aggregates are merged pairwise
+ * as the tasks join. The result is written as {@code summary.json} and a self-contained {@code index.html} with its
+ * charts, see {@link ReportWriter}.
+ * <p>
+ * The log format is the one of Gatling 3.14, see {@code videogamedb.distributed.SimulationLogMerger}. Percentiles
+ * are those of HdrHistograms with 3 significant digits (2 for the timeline), so they may differ from Gatling's report
+ * by its own rounding. Group records are counted but not reported.
+ * <p>
+ * Runtime parameters: {@code REPORT_RUN} (a run folder, a {@code simulation.log}, or {@code latest} for the latest run
+ * of the results folder), {@code REPORT_OUTPUT} (default {@code <run folder>/streaming-report}),
+ * {@code REPORT_PARALLELISM} (default the number of cores), {@code REPORT_CHUNK_MB} (default 32) and
+ * {@code REPORT_POINTS} (timeline buckets, default 600).
+ */
+public final class StreamingReport {
+
+    private static final byte RUN = 0;
+    private static final byte REQUEST = 1;
+    private static final byte USER = 2;
+    private static final byte GROUP = 3;
+    private static final byte ERROR = 4;
+
+    private static final int MAX_ERROR_MESSAGES = 100;
+    private static final String OTHER_ERRORS = "other errors";
+
+    /**
+     * Response times in milliseconds of one request name, or of all requests for the global line.
+     */
+    public record RequestSummary(String name, long count, long failed, long min, long p50, long p75, long p95,
+                                 long p99, long max, double mean, double rps) {
+    }
+
+    /**
+     * One bucket of the timeline, {@code second} being its start relative to the run start.
+     */
+    public record TimelinePoint(long second, double rps, double failedRps, long p50, long p95, long p99,
+                                long activeUsers) {
+    }
+
+    public record Summary(String simulation, long start, long durationMillis, long records, long users,
+                          RequestSummary global, List<RequestSummary> requests, List<TimelinePoint> timeline,
+                          Map<String, Long> errors) {
+    }
+
+    record Header(String simulation, long start, long recordsOffset) {
+    }
+
+    private record Chunk(long start, long end) {
+    }
+
+    // strings holds every cached string of the log, by index, and is no longer written once the layout is done
+    private record Layout(Header header, List<Chunk> chunks, Map<Integer, String> strings, int lastTimestamp) {
+    }
+
+    private StreamingReport() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(runFromSystemProperties(Path.of("target", "gatling")));
+    }
+
+    /**
+     * Reports on the run {@code REPORT_RUN} points at, printing the summary; returns the process exit code.
+     */
+    public static int runFromSystemProperties(Path resultsFolder) {
+        String run = System.getProperty("REPORT_RUN", "latest");
+        Path log = resolveLog(run, resultsFolder);
+        if (log == null) {
+            System.err.println("No simulation.log for " + run + " in " + resultsFolder.toAbsolutePath());
+            return 1;
+        }
+        Path output = Path.of(System.getProperty("REPORT_OUTPUT",
+                log.toAbsolutePath().getParent().resolve("streaming-report").toString()));
+        long started = System.nanoTime();
+        Summary summary = generate(log, output,
+                Integer.parseInt(System.getProperty("REPORT_PARALLELISM",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Long.parseLong(System.getProperty("REPORT_CHUNK_MB", "32")) << 20,
+                Integer.parseInt(System.getProperty("REPORT_POINTS", "600")));
+        System.out.print(text(summary));
+        System.out.printf(Locale.ROOT, "Report of %d records written to %s in %.1f s%n", summary.records(),
+                output.resolve("index.html").toAbsolutePath(), (System.nanoTime() - started) / 1e9);
+        return 0;
+    }
+
+    /**
+     * Aggregates {@code log} on {@code parallelism} workers and writes the report to {@code outputFolder}.
+     */
+    public static Summary generate(Path log, Path outputFolder, int parallelism, long chunkBytes, int points) {
+        Summary summary = summarize(log, parallelism, chunkBytes, points);
+        ReportWriter.write(summary, outputFolder);
+        return summary;
+    }
+
+    public static Summary summarize(Path log, int parallelism, long chunkBytes, int points) {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            Layout layout = layout(channel, chunkBytes);
+            // whole seconds, as few as fit the run into the requested number of buckets
+            int bucketMillis = Math.max(1, Math.ceilDiv(layout.lastTimestamp() + 1, Math.max(1, points) * 1000)) * 1000;
+            int buckets = Math.max(1, Math.ceilDiv(layout.lastTimestamp() + 1, bucketMillis));
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                Aggregate aggregate = pool.invoke(new ChunkTask(channel, layout.chunks(), layout.strings(), 0,
+                        layout.chunks().size(), bucketMillis, buckets));
+                return aggregate.summary(layout.header(), layout.lastTimestamp());
+            } finally {
+                pool.shutdown();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + log, e);
+        }
+    }
+
+    /**
+     * The class name of the simulation {@code log} is the run of, read from its run record only.
+     */
+    public static String simulation(Path log) {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            return readHeader(new MappedLogReader(channel, 0)).simulation();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + log, e);
+        }
+    }
+
+    static Header readHeader(MappedLogReader in) throws IOException {
+        if (in.readByte() != RUN) {
+            throw new IOException("The log doesn't start with a run record");
+        }
+        in.skipText();
+        String simulation = in.readText();
+        long start = in.readLong();
+        in.skipText();
+        for (int i = in.readInt(); i > 0; i--) {
+            in.skipText();
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            in.skip(in.readInt());
+        }
+        return new Header(simulation, start, in.position());
+    }
+
+    // the only sequential pass: record lengths are only known by reading them, and cached strings by their definition
+    private static Layout layout(FileChannel channel, long chunkBytes) throws IOException {
+        MappedLogReader in = new MappedLogReader(channel, 0);
+        Header header = readHeader(in);
+        Map<Integer, String> cache = new HashMap<>();
+        List<Chunk> chunks = new ArrayList<>();
+        long chunkStart = header.recordsOffset();
+        int lastTimestamp = 0;
+        long end = channel.size();
+        while (!in.atEnd()) {
+            long recordStart = in.position();
+            if (recordStart - chunkStart >= chunkBytes) {
+                chunks.add(new Chunk(chunkStart, recordStart));
+                chunkStart = recordStart;
+            }
+            try {
+                lastTimestamp = Math.max(lastTimestamp, skipRecord(in, cache));
+            } catch (EOFException e) {
+                // a truncated last record, the run was killed while writing it
+                end = recordStart;
+                break;
+            }
+        }
+        chunks.add(new Chunk(chunkStart, end));
+        return new Layout(header, chunks, Collections.unmodifiableMap(cache), lastTimestamp);
+    }
+
+    // returns the record's last timestamp
+    private static int skipRecord(MappedLogReader in, Map<Integer, String> cache) throws IOException {
+        int header = in.readByte();
+        return switch (header) {
+            case USER -> {
+                in.skip(4 + 1);
+                yield in.readInt();
+            }
+            case REQUEST -> {
+                skipGroups(in, cache);
+                skipCachedText(in, cache);
+                in.skip(4);
+                int end = in.readInt();
+                in.skip(1);
+                skipCachedText(in, cache);
+                yield end;
+            }
+            case GROUP -> {
+                skipGroups(in, cache);
+                in.skip(4);
+                int end = in.readInt();
+                in.skip(4 + 1);
+                yield end;
+            }
+            case ERROR -> {
+                skipCachedText(in, cache);
+                yield in.readInt();
+            }
+            default -> throw new IOException("Unknown record header " + header + " at " + (in.position() - 1));
+        };
+    }
+
+    static void skipGroups(MappedLogReader in, Map<Integer, String> cache) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            skipCachedText(in, cache);
+        }
+    }
+
+    private static void skipCachedText(MappedLogReader in, Map<Integer, String> cache) throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            cache.put(index, in.readText());
+        }
+    }
+
+    static String readCachedText(MappedLogReader in, Map<Integer, String> cache) throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            String text = in.readText();
+            cache.put(index, text);
+            return text;
+        }
+        String cached = cache.get(-index);
+        if (cached == null) {
+            throw new IOException("Unknown cached string " + -index);
+        }
+        return cached;
+    }
+
+    // the definitions were read by the layout pass already, a chunk only skips them
+    private static String readSharedText(MappedLogReader in, Map<Integer, String> strings) throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            in.skipText();
+        }
+        String text = strings.get(Math.abs(index));
+        if (text == null) {
+            throw new IOException("Unknown cached string " + Math.abs(index));
+        }
+        return text;
+    }
+
+    private static void skipSharedGroups(MappedLogReader in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            if (in.readInt() >= 0) {
+                in.skipText();
+            }
+        }
+    }
+
+    /**
+     * Aggregates chunks {@code from} to {@code to}: halves are forked until one chunk is left, then merged back.
+     */
+    private static final class ChunkTask extends RecursiveTask<Aggregate> {
+
+        private static final long serialVersionUID = 1L;
+
+        // tasks only run on the pool of summarize(), they are never serialized
+        private final transient FileChannel channel;
+        private final transient List<Chunk> chunks;
+        private final transient Map<Integer, String> strings;
+        private final int from;
+        private final int to;
+        private final int bucketMillis;
+        private final int buckets;
+
+        ChunkTask(FileChannel channel, List<Chunk> chunks, Map<Integer, String> strings, int from, int to,
+                  int bucketMillis, int buckets) {
+            this.channel = channel;
+            this.chunks = chunks;
+            this.strings = strings;
+            this.from = from;
+            this.to = to;
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+
+        @Override
+        protected Aggregate compute() {
+            if (to - from == 1) {
+                try {
+                    return aggregate(chunks.get(from));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(channel, chunks, strings, from, middle, bucketMillis, buckets);
+            left.fork();
+            Aggregate right = new ChunkTask(channel, chunks, strings, middle, to, bucketMillis, buckets).compute();
+            return left.join().merge(right);
+        }
+
+        private Aggregate aggregate(Chunk chunk) throws IOException {
+            Aggregate aggregate = new Aggregate(bucketMillis, buckets);
+            MappedLogReader in = new MappedLogReader(channel, chunk.start());
+            while (in.position() < chunk.end()) {
+                int header = in.readByte();
+                switch (header) {
+                    case USER -> {
+                        in.skip(4);
+                        boolean start = in.readBoolean();
+                        aggregate.user(start, in.readInt());
+                    }
+                    case REQUEST -> {
+                        skipSharedGroups(in);
+                        String name = readSharedText(in, strings);
+                        int start = in.readInt();
+                        int end = in.readInt();
+                        boolean ok = in.readBoolean();
+                        String message = readSharedText(in, strings);
+                        aggregate.request(name, start, end, ok, message);
+                    }
+                    case GROUP -> {
+                        skipSharedGroups(in);
+                        in.skip(4 + 4 + 4 + 1);
+                    }
+                    case ERROR -> {
+                        aggregate.error(readSharedText(in, strings));
+                        in.skip(4);
+                    }
+                    default -> throw new IOException("Unknown record header " + header + " at " + (in.position() - 1));
+                }
+                aggregate.records++;
+            }
+            return aggregate;
+        }
+    }
+
+    private static final class Stats {
+        private final Histogram histogram;
+        private long failed;
+        private long sum;
+        private int firstStart = Integer.MAX_VALUE;
+        private int lastEnd = Integer.MIN_VALUE;
+
+        Stats(int significantDigits) {
+            histogram = new Histogram(significantDigits);
+        }
+
+        void add(int start, int end, boolean ok) {
+            long millis = Math.max(0, end - start);
+            histogram.recordValue(millis);
+            sum += millis;
+            if (!ok) {
+                failed++;
+            }
+            firstStart = Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+        }
+
+        void merge(Stats other) {
+            histogram.add(other.histogram);
+            failed += other.failed;
+            sum += other.sum;
+            firstStart = Math.min(firstStart, other.firstStart);
+            lastEnd = Math.max(lastEnd, other.lastEnd);
+        }
+
+        // throughput over the span of the requests themselves, like Gatling's report
+        RequestSummary summary(String name) {
+            long count = histogram.getTotalCount();
+            double seconds = Math.max(1, (lastEnd - firstStart) / 1000.0);
+            return new RequestSummary(name, count, failed, count == 0 ? 0 : histogram.getMinValue(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(75),
+                    histogram.getValueAtPercentile(95), histogram.getValueAtPercentile(99), histogram.getMaxValue(),
+                    count == 0 ? 0 : (double) sum / count, count / seconds);
+        }
+    }
+
+    /**
+     * What is kept of a part of the log: it grows with the number of request names and timeline buckets only.
+     */
+    private static final class Aggregate {
+        private final int bucketMillis;
+        private final Map<String, Stats> requests = new HashMap<>();
+        private final Stats global = new Stats(3);
+        private final long[] requestsPerBucket;
+        private final long[] failedPerBucket;
+        private final long[] usersPerBucket;
+        // allocated for the buckets the part covers
+        private final Histogram[] latencyPerBucket;
+        private final Map<String, Long> errors = new HashMap<>();
+        private long users;
+        private long records;
+
+        Aggregate(int bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            requestsPerBucket = new long[buckets];
+            failedPerBucket = new long[buckets];
+            usersPerBucket = new long[buckets];
+            latencyPerBucket = new Histogram[buckets];
+        }
+
+        private int bucket(int timestamp) {
+            return Math.clamp(timestamp / bucketMillis, 0, requestsPerBucket.length - 1);
+        }
+
+        void user(boolean start, int timestamp) {
+            // users started minus users ended in the bucket, summed up into active users by the summary
+            usersPerBucket[bucket(timestamp)] += start ? 1 : -1;
+            if (start) {
+                users++;
+            }
+        }
+
+        void request(String name, int start, int end, boolean ok, String message) {
+            long millis = Math.max(0, end - start);
+            requests.computeIfAbsent(name, key -> new Stats(3)).add(start, end, ok);
+            global.add(start, end, ok);
+            int bucket = bucket(start);
+            requestsPerBucket[bucket]++;
+            Histogram latency = latencyPerBucket[bucket];
+            if (latency == null) {
+                latency = latencyPerBucket[bucket] = new Histogram(2);
+            }
+            latency.recordValue(millis);
+            if (!ok) {
+                failedPerBucket[bucket]++;
+                error(message);
+            }
+        }
+
+        void error(String message) {
+            String key = errors.containsKey(message) || errors.size() < MAX_ERROR_MESSAGES ? message : OTHER_ERRORS;
+            errors.merge(key, 1L, Long::sum);
+        }
+
+        Aggregate merge(Aggregate other) {
+            other.requests.forEach((name, stats) -> requests.computeIfAbsent(name, key -> new Stats(3)).merge(stats));
+            global.merge(other.global);
+            for (int i = 0; i < requestsPerBucket.length; i++) {
+                requestsPerBucket[i] += other.requestsPerBucket[i];
+                failedPerBucket[i] += other.failedPerBucket[i];
+                usersPerBucket[i] += other.usersPerBucket[i];
+                if (latencyPerBucket[i] == null) {
+                    latencyPerBucket[i] = other.latencyPerBucket[i];
+                } else if (other.latencyPerBucket[i] != null) {
+                    latencyPerBucket[i].add(other.latencyPerBucket[i]);
+                }
+            }
+            other.errors.forEach(this::mergeError);
+            users += other.users;
+            records += other.records;
+            return this;
+        }
+
+        private void mergeError(String message, long count) {
+            String key = errors.containsKey(message) || errors.size() < MAX_ERROR_MESSAGES ? message : OTHER_ERRORS;
+            errors.merge(key, count, Long::sum);
+        }
+
+        Summary summary(Header header, int lastTimestamp) {
+            List<RequestSummary> perRequest = new TreeMap<>(requests).entrySet().stream()
+                    .map(entry -> entry.getValue().summary(entry.getKey()))
+                    .toList();
+            List<TimelinePoint> timeline = new ArrayList<>(requestsPerBucket.length);
+            double bucketSeconds = bucketMillis / 1000.0;
+            long active = 0;
+            for (int i = 0; i < requestsPerBucket.length; i++) {
+                active += usersPerBucket[i];
+                Histogram latency = latencyPerBucket[i];
+                timeline.add(new TimelinePoint((long) i * bucketMillis / 1000, requestsPerBucket[i] / bucketSeconds,
+                        failedPerBucket[i] / bucketSeconds,
+                        latency == null ? 0 : latency.getValueAtPercentile(50),
+                        latency == null ? 0 : latency.getValueAtPercentile(95),
+                        latency == null ? 0 : latency.getValueAtPercentile(99), active));
+            }
+            Map<String, Long> sortedErrors = new LinkedHashMap<>();
+            errors.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(entry -> sortedErrors.put(entry.getKey(), entry.getValue()));
+            return new Summary(header.simulation(), header.start(), lastTimestamp, records, users,
+                    global.summary("All requests"), perRequest, timeline, sortedErrors);
+        }
+    }
+
+    /**
+     * The summary as a table, as printed at the end of a run.
+     */
+    public static String text(Summary summary) {
+        StringBuilder text = new StringBuilder("%s, %d users over %d s:%n".formatted(summary.simulation(),
+                summary.users(), summary.durationMillis() / 1000));
+        text.append(String.format(Locale.ROOT, "  %-40s %10s %8s | %6s %6s %6s %6s %6s %6s | %8s%n",
+                "request", "count", "KO", "min", "p50", "p75", "p95", "p99", "max", "rps"));
+        Stream.concat(summary.requests().stream(), Stream.of(summary.global())).forEach(request ->
+                text.append(String.format(Locale.ROOT, "  %-40s %10d %8d | %6d %6d %6d %6d %6d %6d | %8.1f%n",
+                        request.name().length() > 40 ? request.name().substring(0, 37) + "..." : request.name(),
+                        request.count(), request.failed(), request.min(), request.p50(), request.p75(), request.p95(),
+                        request.p99(), request.max(), request.rps())));
+        summary.errors().entrySet().stream().limit(5).forEach(error ->
+                text.append(String.format(Locale.ROOT, "  %8d x %s%n", error.getValue(), error.getKey())));
+        return text.toString();
+    }
+
+    /**
+     * {@code run} as a {@code simulation.log}: the log itself, the log of a run folder, or for {@code latest} the log
+     * of the latest run in {@code resultsFolder}; null when there is none.
+     */
+    public static Path resolveLog(String run, Path resultsFolder) {
+        Path log = run.equals("latest") ? latestLog(resultsFolder, Long.MIN_VALUE).orElse(null) : Path.of(run);
+        if (log != null && Files.isDirectory(log)) {
+            log = log.resolve("simulation.log");
+        }
+        return log != null && Files.isRegularFile(log) ? log : null;
+    }
+
+    /**
+     * The {@code simulation.log} of the latest run in {@code resultsFolder}, if it was last written at or after
+     * {@code notBefore} (epoch milliseconds).
+     */
+    public static Optional<Path> latestLog(Path resultsFolder, long notBefore) {
+        if (!Files.isDirectory(resultsFolder)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> runs = Files.list(resultsFolder)) {
+            return runs.map(run -> run.resolve("simulation.log"))
+                    .filter(Files::isRegularFile)
+                    .filter(log -> lastModified(log) >= notBefore)
+                    .max(Comparator.comparingLong(StreamingReport::lastModified));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + resultsFolder, e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
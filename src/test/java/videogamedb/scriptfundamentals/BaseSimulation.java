@@ -1,29 +1,118 @@
 package videogamedb.scriptfundamentals;
 
+import auth.JwtTokenProvider;
+import cleanup.GameCleanup;
+import debug.DebugSink;
 import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.CoreDsl;
+import io.gatling.javaapi.core.PopulationBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Session;
 import io.gatling.javaapi.core.Simulation;
+import io.gatling.javaapi.http.Http;
+import io.gatling.javaapi.http.HttpDsl;
 import io.gatling.javaapi.http.HttpProtocolBuilder;
+import io.gatling.javaapi.http.HttpRequestActionBuilder;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import utils.SessionUtils;
+import metrics.CorrectedLatencies;
+import metrics.LiveMetrics;
+import metrics.VisibilityLatencies;
+import utils.GameIdGenerator;
+import videogamedb.reporting.RunStore;
+import videogamedb.reporting.StreamingReport;
+import videogamedb.stub.VideoGameDbStubServer;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import static data.EndpointEnum.AUTHENTICATE_ENDPOINT;
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
 import static io.gatling.javaapi.core.CoreDsl.StringBody;
+import static io.gatling.javaapi.core.CoreDsl.bodyString;
+import static io.gatling.javaapi.core.CoreDsl.doIf;
 import static io.gatling.javaapi.core.CoreDsl.exec;
 import static io.gatling.javaapi.core.CoreDsl.jmesPath;
+import static io.gatling.javaapi.core.CoreDsl.pause;
 import static io.gatling.javaapi.http.HttpDsl.http;
 import static io.gatling.javaapi.http.HttpDsl.status;
 
 public abstract class BaseSimulation extends Simulation {
 
-    protected static final String BASE_URL = "https://videogamedb.uk/api";
+    // -DSTUB_SERVER=true starts the embedded stub and targets it, -DBASE_URL points at any other instance
+    private static final VideoGameDbStubServer STUB = Boolean.parseBoolean(System.getProperty("STUB_SERVER", "false"))
+            ? VideoGameDbStubServer.startShared()
+            : null;
+    protected static final String BASE_URL = STUB != null
+            ? STUB.baseUrl()
+            : System.getProperty("BASE_URL", "https://videogamedb.uk/api");
     protected static final String ACCEPT_JSON = "application/json";
     protected static final String CONTENT_TYPE_JSON = "application/json";
     protected static final String AUTH_HEADER = "Authorization";
 
     protected static final String JWT_TOKEN_KEY = "jwtToken";
 
+    // off unless -DDEBUG=true, see DebugSink for sampling and size limits
+    protected static final DebugSink DEBUG = DebugSink.shared();
+
+    // off unless -DMETRICS_PORT is set, see LiveMetrics for what the endpoint exposes
+    protected static final LiveMetrics METRICS = LiveMetrics.shared();
+
+    // per-user connections unless -DCONNECTIONS=shared or http2, -DCONNECTION_REPORT=true prints what they cost
+    protected static final ConnectionStrategy CONNECTIONS = ConnectionStrategy.fromSystemProperties();
+    private static final ConnectionReport CONNECTION_REPORT = ConnectionReport.fromSystemProperties();
+
+    // off unless -DCO_CORRECTION=true, response times as users behind their schedule would have seen them, see
+    // CorrectedLatencies
+    private static final CorrectedLatencies CORRECTED_LATENCIES = CorrectedLatencies.fromSystemProperties();
+
+    // how often a user waiting for a slot of the capped shared pool retries
+    private static final Duration LEASE_RETRY = Duration.ofMillis(5);
+    private static final String LEASE_REQUESTED_AT = "connectionLeaseRequestedAt";
+
+    // created games are deleted off the measured path unless -DCLEANUP=inline, see GameCleanup
+    protected static final GameCleanup CLEANUP = GameCleanup.fromSystemProperties(
+            URI.create(BASE_URL + VIDEO_GAME_ENDPOINT.getName()),
+            () -> buildBearerToken(SharedToken.PROVIDER.currentToken()));
+    protected static final String CREATED_GAME_ID_KEY = "createdGameId";
+
+    // off unless -DVISIBILITY_PROBE=true, how long created games take to show up in reads, see VisibilityLatencies
+    private static final VisibilityLatencies VISIBILITY = VisibilityLatencies.fromSystemProperties();
+    private static final String PROBE_WRITTEN_AT = "visibilityProbeWrittenAt";
+    private static final String PROBE_READS = "visibilityProbeReads";
+    private static final String PROBE_STATUS = "visibilityProbeStatus";
+    private static final String PROBE_READ_ID = "visibilityProbeReadId";
+    private static final String PROBE_SEEN_AT = "visibilityProbeSeenAt";
+
+    // global and per-request assertions from slo/default.conf unless -DSLO_CATALOG says otherwise, see SloCatalog
+    private static final SloCatalog SLO = SloCatalog.fromSystemProperties();
+    // where Gatling writes its runs, and where the JUnit report of the gates goes, see SloReport
+    private static final Path SLO_RESULTS_FOLDER = Path.of(System.getProperty("SLO_RESULTS_FOLDER", "target/gatling"));
+    private static final Path SLO_REPORT_FOLDER = Path.of(System.getProperty("SLO_REPORT_FOLDER", "target/slo-reports"));
+    // runs go to the run store only with -DRUN_STORE=true (run-store/) or -DRUN_STORE=<folder>, see RunStore;
+    // injectors of a distributed run only hold part of it, the coordinator stores the merged run
+    private static final RunStore RUN_STORE = RunStore.fromSystemProperties();
+    // stable names of the requests the simulation declares, the only ones its SLO assertions may name
+    private static final Set<String> DECLARED_REQUESTS = ConcurrentHashMap.newKeySet();
+
+    private static final GameIdGenerator GAME_IDS = buildGameIdGenerator();
+
+    // the protocol of buildHttpProtocol() with every request left out of the stats, for the warm-up users
+    private static volatile HttpProtocolBuilder warmUpProtocol;
+
+    // every virtual user logs in on its own only when the test targets /authenticate itself
+    protected static final boolean PER_USER_AUTH = Boolean.parseBoolean(System.getProperty("PER_USER_AUTH", "false"));
+
     private static final String AUTH_BODY = """
             {
               "password": "admin",
@@ -35,27 +124,309 @@ public abstract class BaseSimulation extends Simulation {
         return "Bearer " + token;
     }
 
-    protected static String getAuthValue() {
-        return buildBearerToken(SessionUtils.buildSessionKey(JWT_TOKEN_KEY));
+    // the shared token is read from its provider on every request, sessions only hold per-user tokens
+    protected static Function<Session, String> getAuthValue() {
+        if (PER_USER_AUTH) {
+            return session -> buildBearerToken(session.getString(JWT_TOKEN_KEY));
+        }
+        return session -> buildBearerToken(SharedToken.PROVIDER.currentToken());
     }
 
     protected static HttpProtocolBuilder buildHttpProtocol() {
-        return http
+        HttpProtocolBuilder protocol = CONNECTIONS.apply(http
                 .baseUrl(BASE_URL)
                 .acceptHeader(ACCEPT_JSON)
-                .contentTypeHeader(CONTENT_TYPE_JSON);
+                .contentTypeHeader(CONTENT_TYPE_JSON));
+        if (!METRICS.enabled() && !DEBUG.enabled() && !CONNECTION_REPORT.enabled() && !CORRECTED_LATENCIES.enabled()) {
+            warmUpProtocol = protocol.silentUri(".*");
+            return protocol;
+        }
+        // every response of every request goes through here, before the checks run
+        protocol = protocol.transformResponse((response, session) -> {
+            if (session.scenario().endsWith(LoadProfile.WARM_UP_SUFFIX)) {
+                return response;
+            }
+            String name = response.request().getName();
+            METRICS.recordResponse(name, response.startTimestamp(), response.endTimestamp(),
+                    response.status().code() < 400);
+            if (CONNECTION_REPORT.enabled()) {
+                CONNECTION_REPORT.recordResponse(response.startTimestamp(), response.endTimestamp());
+            }
+            CORRECTED_LATENCIES.recordResponse(session.userId(), name, response.startTimestamp(),
+                    response.endTimestamp());
+            if (DEBUG.sampled(session.userId())) {
+                String values = RequestNames.dynamicValues(name, session);
+                if (values != null) {
+                    DEBUG.log(session.userId(), name + ": " + values);
+                }
+            }
+            return response;
+        });
+        warmUpProtocol = protocol.silentUri(".*");
+        return protocol;
+    }
+
+    // used instead of HttpDsl.http by the simulations: EL parts stay out of the stats name, see RequestNames
+    protected static Http http(String name) {
+        String stable = RequestNames.stable(name);
+        DECLARED_REQUESTS.add(stable);
+        return HttpDsl.http(stable);
+    }
+
+    // used instead of CoreDsl.scenario by the simulations, so METRICS counts their active users and users of a
+    // capped shared pool wait for a slot before their first request
+    protected static ScenarioBuilder scenario(String name) {
+        ScenarioBuilder scenario = CoreDsl.scenario(name);
+        if (METRICS.enabled() || CONNECTION_REPORT.enabled()) {
+            scenario = scenario.exec(session -> {
+                METRICS.userStarted(session.scenario());
+                CONNECTION_REPORT.userStarted();
+                return session;
+            });
+        }
+        if (CONNECTIONS.capped()) {
+            scenario = scenario
+                    .exec(session -> session.set(LEASE_REQUESTED_AT, System.currentTimeMillis()))
+                    .asLongAs(session -> !CONNECTIONS.tryLease()).on(pause(LEASE_RETRY))
+                    .exec(session -> {
+                        CONNECTIONS.leased(System.currentTimeMillis() - session.getLong(LEASE_REQUESTED_AT));
+                        return session.remove(LEASE_REQUESTED_AT);
+                    });
+        }
+        return scenario;
+    }
+
+    // injection, throttling and max duration come from the profile, -DLOAD_PROFILE swaps it without recompiling
+    protected SetUp setUp(ScenarioBuilder scenario, LoadProfile profile) {
+        ScenarioBuilder measured = CONNECTIONS.capped() ? releasingLease(scenario) : scenario;
+        if (METRICS.enabled() || CORRECTED_LATENCIES.enabled()) {
+            measured = measured.exec(session -> {
+                if (METRICS.enabled()) {
+                    recordSessionSize(session);
+                }
+                METRICS.userEnded(session.scenario());
+                // users that exit early keep their entry, a few bytes each until the end of the run
+                CORRECTED_LATENCIES.userEnded(session.userId());
+                return session;
+            });
+        }
+        List<PopulationBuilder> populations = new ArrayList<>();
+        populations.add(profile.inject(measured));
+        // silent requests are neither in the stats nor in simulation.log, so the SLO gates and the run store only
+        // see the profile's users
+        profile.warmUp(measured)
+                .map(warmUp -> warmUpProtocol == null ? warmUp : warmUp.protocols(warmUpProtocol))
+                .ifPresent(populations::add);
+        SetUp setUp = profile.shape(setUp(populations));
+        if (RUN_STORE.enabled() && System.getProperty("INJECTOR_COUNT") == null) {
+            addToRunStoreOnExit(profile.name());
+        }
+        List<SloCatalog.Gate> gates = SLO.gates(getClass().getSimpleName(), DECLARED_REQUESTS);
+        if (gates.isEmpty()) {
+            return setUp;
+        }
+        writeSloReportOnExit(getClass().getName(), gates);
+        return setUp.assertions(gates.stream().map(SloCatalog.Gate::toAssertion).toList());
+    }
+
+    // a failed request or crashed exec leaves the block rather than the scenario, so the user still gives its slot
+    // back; exitHere and forever() loops keep it until the end of the run, see ConnectionStrategy
+    private static ScenarioBuilder releasingLease(ScenarioBuilder scenario) {
+        io.gatling.core.structure.ScenarioBuilder leased = unwrap(scenario);
+        ChainBuilder body = ChainBuilder.EMPTY.make(empty ->
+                new io.gatling.core.structure.ChainBuilder(leased.actionBuilders()));
+        return CoreDsl.scenario(leased.name())
+                .exitBlockOnFail().on(body)
+                .exec(session -> {
+                    CONNECTIONS.release();
+                    return session;
+                });
+    }
+
+    // the Java DSL only hands out its Scala builder through make()
+    private static io.gatling.core.structure.ScenarioBuilder unwrap(ScenarioBuilder scenario) {
+        List<io.gatling.core.structure.ScenarioBuilder> unwrapped = new ArrayList<>(1);
+        scenario.make(wrapped -> {
+            unwrapped.add(wrapped);
+            return wrapped;
+        });
+        return unwrapped.get(0);
+    }
+
+    // Gatling writes simulation.log completely before its JVM exits, after after() has run
+    private static void writeSloReportOnExit(String simulation, List<SloCatalog.Gate> gates) {
+        long startedAt = System.currentTimeMillis();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                SloReport.writeForLatestRun(SLO_RESULTS_FOLDER, simulation, gates, SLO_REPORT_FOLDER, startedAt)
+                        .ifPresent(report -> System.out.println("SLO report written to " + report.toAbsolutePath()));
+            } catch (RuntimeException e) {
+                System.err.println("Could not write the SLO report: " + e);
+            }
+        }, "slo-report"));
+    }
+
+    private static void addToRunStoreOnExit(String profile) {
+        long startedAt = System.currentTimeMillis();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Path log = StreamingReport.resolveLog("latest", SLO_RESULTS_FOLDER);
+                if (log != null && Files.getLastModifiedTime(log).toMillis() >= startedAt) {
+                    System.out.println("Run stored as " + RUN_STORE.add(log, RunStore.gitCommit(), profile));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not add the run to the run store: " + e);
+            }
+        }, "run-store"));
+    }
+
+    // subclasses overriding before() and after() call these, the connection report needs both ends of the run
+    @Override
+    public void before() {
+        CONNECTION_REPORT.probe(BASE_URL);
+    }
+
+    @Override
+    public void after() {
+        String cleanup = CLEANUP.drain();
+        if (cleanup != null) {
+            System.out.println(cleanup);
+        }
+        if (CONNECTION_REPORT.enabled()) {
+            System.out.print(CONNECTION_REPORT.summary(CONNECTIONS, STUB != null ? STUB.clientAddressCount() : -1));
+        }
+        String corrected = CORRECTED_LATENCIES.summary();
+        if (corrected != null) {
+            System.out.print(corrected);
+            Path histograms = CORRECTED_LATENCIES.writeHistograms(getClass().getSimpleName().toLowerCase(Locale.ROOT)
+                    + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")));
+            System.out.println("  histograms written to " + histograms.toAbsolutePath());
+        }
+        String visibility = VISIBILITY.summary();
+        if (visibility != null) {
+            System.out.print(visibility);
+            Path histogram = VISIBILITY.writeHistogram(getClass().getSimpleName().toLowerCase(Locale.ROOT)
+                    + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")));
+            if (histogram != null) {
+                System.out.println("  histogram written to " + histogram.toAbsolutePath());
+            }
+        }
+    }
+
+    // queues the game saved under CREATED_GAME_ID_KEY for GameCleanup, right after its creation so it is deleted
+    // even when the user doesn't get to the end of its scenario; ids the API didn't assign (0 when it only echoes
+    // writes back) are skipped
+    protected static final ChainBuilder queueCreatedGameForCleanup = exec(session -> {
+        if (session.contains(CREATED_GAME_ID_KEY)) {
+            long gameId = session.getLong(CREATED_GAME_ID_KEY);
+            if (gameId > 0) {
+                CLEANUP.add(gameId);
+            }
+            return session.remove(CREATED_GAME_ID_KEY);
+        }
+        return session;
+    });
+
+    // with VISIBILITY_PROBE=true, reads the game saved under CREATED_GAME_ID_KEY back with a bounded backoff until the
+    // API returns it, and records the time from the create response to that read; goes right after the create request
+    // and before queueCreatedGameForCleanup. Every status is a valid answer to the probe reads, a 404 only means not
+    // yet, and ids the API didn't assign are skipped
+    protected static final ChainBuilder probeVisibility = doIf(session -> VISIBILITY.enabled()
+            && session.contains(CREATED_GAME_ID_KEY) && session.getLong(CREATED_GAME_ID_KEY) > 0).then(
+            exec(session -> session.set(PROBE_WRITTEN_AT, System.currentTimeMillis()).set(PROBE_READS, 0))
+                    .asLongAs(session -> !session.contains(PROBE_SEEN_AT)
+                            && VISIBILITY.pending(session.getLong(PROBE_WRITTEN_AT))).on(
+                            exec(http("Read after write")
+                                    .get(session -> VIDEO_GAME_ENDPOINT.getName() + "/" + session.getLong(CREATED_GAME_ID_KEY))
+                                    .check(status().saveAs(PROBE_STATUS))
+                                    .checkIf((response, session) -> response.status().code() == HttpResponseStatus.OK.code())
+                                    .then(jmesPath("id").ofLong().optional().saveAs(PROBE_READ_ID)))
+                                    .exec(session -> {
+                                        Session read = session.set(PROBE_READS, session.getInt(PROBE_READS) + 1);
+                                        boolean seen = read.contains(PROBE_READ_ID)
+                                                && read.getLong(PROBE_READ_ID) == read.getLong(CREATED_GAME_ID_KEY);
+                                        return seen ? read.set(PROBE_SEEN_AT, System.currentTimeMillis()) : read;
+                                    })
+                                    .doIf(session -> !session.contains(PROBE_SEEN_AT)).then(
+                                            pause(session -> VISIBILITY.backoff(session.getInt(PROBE_READS)))))
+                    .exec(session -> {
+                        if (session.contains(PROBE_SEEN_AT)) {
+                            VISIBILITY.recordVisible(session.getLong(PROBE_WRITTEN_AT), session.getLong(PROBE_SEEN_AT),
+                                    session.getInt(PROBE_READS));
+                        } else {
+                            VISIBILITY.recordNotVisible(session.getInt(PROBE_READS));
+                        }
+                        return session.removeAll(PROBE_WRITTEN_AT, PROBE_READS, PROBE_STATUS, PROBE_READ_ID,
+                                PROBE_SEEN_AT);
+                    }));
+
+    // drops the attributes block adds (feeder records, saved values) when it is done, except kept, see SessionScopes;
+    // with METRICS on, the session size is sampled at the end of every scoped block and of every user
+    protected static ChainBuilder scoped(ChainBuilder block, String... kept) {
+        return SessionScopes.scoped(block, METRICS.enabled() ? BaseSimulation::recordSessionSize : null, kept);
+    }
+
+    private static void recordSessionSize(Session session) {
+        SessionScopes.Footprint footprint = SessionScopes.footprint(session);
+        METRICS.recordSessionSize(session.scenario(), footprint.attributes(), footprint.bytes());
     }
 
-    protected static final ChainBuilder authenticate =
-            exec(http("Authenticate")
-                    .post(AUTHENTICATE_ENDPOINT.getName())
-                    .body(StringBody(AUTH_BODY))
-                    .check(status().is(HttpResponseStatus.OK.code()))
-                    .check(status().not(HttpResponseStatus.UNAUTHORIZED.code()))
-                    .check(jmesPath("token").saveAs(JWT_TOKEN_KEY)));
+    // with the shared token the chain only makes sure the token is there, no request is recorded
+    protected static final ChainBuilder authenticate = PER_USER_AUTH
+            ? exec(authenticationRequest().check(jmesPath("token").saveAs(JWT_TOKEN_KEY)))
+            : exec(session -> {
+                SharedToken.PROVIDER.currentToken();
+                return session;
+            });
+
+    // the login request itself, whatever PER_USER_AUTH says, for simulations measuring /authenticate
+    protected static HttpRequestActionBuilder authenticationRequest() {
+        return http("Authenticate")
+                .post(AUTHENTICATE_ENDPOINT.getName())
+                .body(StringBody(AUTH_BODY))
+                .check(status().is(HttpResponseStatus.OK.code()))
+                .check(status().not(HttpResponseStatus.UNAUTHORIZED.code()));
+    }
+
+    // the response body is only read for sampled users, and never kept in the session
+    protected static HttpRequestActionBuilder debugResponseBody(HttpRequestActionBuilder request, String label) {
+        if (!DEBUG.enabled()) {
+            return request;
+        }
+        return request
+                .checkIf(session -> DEBUG.sampled(session.userId()))
+                .then(bodyString().transformWithSession((body, session) -> {
+                    DEBUG.body(session.userId(), label, body);
+                    return body;
+                }).exists());
+    }
 
+    // game ID between GAME_ID_MIN and GAME_ID_MAX (1 and 10 by default), drawn per call
     protected static String getRandomGameId() {
-        // random game ID between 1 and 10
-        return String.valueOf(ThreadLocalRandom.current().nextInt(1, 11));
+        return String.valueOf(GAME_IDS.nextId());
+    }
+
+    // evaluated for every request, so each virtual user hits its own game instead of one id fixed at build time
+    protected static Function<Session, String> randomGamePath() {
+        return session -> VIDEO_GAME_ENDPOINT.getName() + "/" + getRandomGameId();
+    }
+
+    private static GameIdGenerator buildGameIdGenerator() {
+        int minId = Integer.parseInt(System.getProperty("GAME_ID_MIN", "1"));
+        int maxId = Integer.parseInt(System.getProperty("GAME_ID_MAX", "10"));
+        return switch (GameIdGenerator.Distribution.parse(System.getProperty("GAME_ID_DISTRIBUTION", "uniform"))) {
+            case UNIFORM -> GameIdGenerator.uniform(minId, maxId);
+            case ZIPFIAN -> GameIdGenerator.zipfian(minId, maxId,
+                    Double.parseDouble(System.getProperty("ZIPF_EXPONENT", "0.99")));
+            case HOT_SET -> GameIdGenerator.hotSet(minId, maxId,
+                    Integer.parseInt(System.getProperty("HOT_SET_SIZE", "2")),
+                    Double.parseDouble(System.getProperty("HOT_SET_SHARE", "0.8")));
+        };
+    }
+
+    // lazy holder, so simulations that never authenticate don't log in
+    private static final class SharedToken {
+        private static final JwtTokenProvider PROVIDER =
+                new JwtTokenProvider(URI.create(BASE_URL + AUTHENTICATE_ENDPOINT.getName()), AUTH_BODY);
     }
 }
@@ -0,0 +1,135 @@
+package videogamedb.scriptfundamentals;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection cost of a run, printed at its end with {@code -DCONNECTION_REPORT=true}: connections opened, what one
+ * costs (TCP connect and TLS handshake) and the share of the request time that went into opening connections.
+ * <p>
+ * Gatling reports the response time of a request including any connection it had to open, without splitting it. The
+ * cost of one connection is therefore measured apart, before the run, by {@code CONNECTION_PROBES} fresh connections
+ * to {@code BASE_URL} (5 by default, full handshakes without session resumption). The embedded stub gives a lower bound
+ * of the connections opened, its distinct client addresses; against other targets only the {@code per-user} strategy
+ * gives a count, one per user.
+ */
+public final class ConnectionReport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final int probes;
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder responseMillis = new LongAdder();
+    private final LongAdder users = new LongAdder();
+    private volatile String probedAddress;
+    private volatile double connectMillis = Double.NaN;
+    private volatile double handshakeMillis = Double.NaN;
+
+    private ConnectionReport(boolean enabled, int probes) {
+        this.enabled = enabled;
+        this.probes = probes;
+    }
+
+    public static ConnectionReport fromSystemProperties() {
+        return new ConnectionReport(Boolean.parseBoolean(System.getProperty("CONNECTION_REPORT", "false")),
+                Integer.parseInt(System.getProperty("CONNECTION_PROBES", "5")));
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void recordResponse(long startMillis, long endMillis) {
+        responses.increment();
+        responseMillis.add(endMillis - startMillis);
+    }
+
+    public void userStarted() {
+        users.increment();
+    }
+
+    /**
+     * Times {@code probes} new connections to the host of {@code baseUrl}; the medians are kept for the report.
+     */
+    public void probe(String baseUrl) {
+        if (!enabled || probes <= 0) {
+            return;
+        }
+        URI uri = URI.create(baseUrl);
+        boolean tls = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : tls ? 443 : 80;
+        long[] connects = new long[probes];
+        long[] handshakes = new long[probes];
+        try {
+            for (int i = 0; i < probes; i++) {
+                long start = System.nanoTime();
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(uri.getHost(), port), CONNECT_TIMEOUT_MILLIS);
+                    long connected = System.nanoTime();
+                    connects[i] = connected - start;
+                    if (tls) {
+                        // a new context per probe: no cached session, so every probe is a full handshake
+                        SSLContext context = SSLContext.getInstance("TLS");
+                        context.init(null, null, null);
+                        try (SSLSocket ssl = (SSLSocket) context.getSocketFactory()
+                                .createSocket(socket, uri.getHost(), port, false)) {
+                            ssl.startHandshake();
+                        }
+                        handshakes[i] = System.nanoTime() - connected;
+                    }
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            System.err.println("Connection probe to " + uri.getHost() + ":" + port + " failed: " + e);
+            return;
+        }
+        probedAddress = uri.getHost() + ":" + port;
+        connectMillis = medianMillis(connects);
+        handshakeMillis = tls ? medianMillis(handshakes) : Double.NaN;
+    }
+
+    /**
+     * The report, with {@code clientAddresses} the distinct client addresses seen by the target, a lower bound of the
+     * connections opened, or -1 when it can't tell them apart.
+     */
+    public String summary(ConnectionStrategy strategy, long clientAddresses) {
+        long counted = clientAddresses >= 0 ? clientAddresses
+                : strategy.mode() == ConnectionStrategy.Mode.PER_USER ? users.sum() : -1;
+        String source = clientAddresses >= 0 ? "distinct client addresses seen by the stub"
+                : counted >= 0 ? "one per user" : "not counted, run against the stub for the count";
+        StringBuilder report = new StringBuilder("Connections: ").append(strategy).append('\n')
+                .append("  opened: ").append(clientAddresses >= 0 ? "at least " : "")
+                .append(counted >= 0 ? String.valueOf(counted) : "?")
+                .append(" (").append(source).append(")\n");
+        if (probedAddress == null) {
+            report.append("  cost of a new connection: not probed\n");
+            return report.toString();
+        }
+        double perConnection = connectMillis + (Double.isNaN(handshakeMillis) ? 0 : handshakeMillis);
+        report.append("  cost of a new connection: %.1f ms TCP%s (median of %d probes to %s)%n".formatted(connectMillis,
+                Double.isNaN(handshakeMillis) ? ", no TLS" : " + %.1f ms TLS".formatted(handshakeMillis),
+                probes, probedAddress));
+        long total = responseMillis.sum();
+        report.append("  requests: %d taking %.1f s in total".formatted(responses.sum(), total / 1000.0));
+        if (counted >= 0 && total > 0) {
+            double setup = counted * perConnection;
+            report.append(", of which %s%.1f s (%.1f %%) opening connections"
+                    .formatted(clientAddresses >= 0 ? "at least " : "about ", setup / 1000.0, Math.min(100, 100 * setup / total)));
+        }
+        return report.append('\n').toString();
+    }
+
+    private static double medianMillis(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1_000_000.0;
+    }
+}
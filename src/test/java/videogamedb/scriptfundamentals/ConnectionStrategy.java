@@ -0,0 +1,96 @@
+package videogamedb.scriptfundamentals;
+
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How virtual users get their connections, selected with {@code -DCONNECTIONS}:
+ * <ul>
+ *   <li>{@code per-user} (default): every virtual user opens and keeps its own connections, like a browser. At high
+ *   arrival rates nearly every user pays a TCP connect and a TLS handshake.</li>
+ *   <li>{@code shared}: one keep-alive pool for all users, like a service client. {@code POOL_SIZE} caps it: a user
+ *   leases one of {@code POOL_SIZE} slots for its whole scenario and users beyond the cap wait for a slot, so the
+ *   pool never holds more connections than slots.</li>
+ *   <li>{@code http2}: the shared pool with HTTP/2, requests of all users multiplexed on few connections. HTTP/2 is
+ *   negotiated with ALPN, so plain HTTP targets (the stub) fall back to HTTP/1.1.</li>
+ * </ul>
+ * Gatling caps connections per user only for fetched page resources, hence the leases for the shared pool cap. A
+ * user gives its slot back when its scenario ends, also after a failed request, but not when it stops at an
+ * {@code exitHere} or loops with {@code forever()} until the maximum duration (as {@code VideoGameDbFullTest} does):
+ * such users keep their slot for the rest of the run, so a cap below their number starves the others.
+ */
+public final class ConnectionStrategy {
+
+    public enum Mode {
+        PER_USER, SHARED, HTTP2;
+
+        public static Mode parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final Mode mode;
+    private final int poolSize;
+    private final Semaphore leases;
+    private final LongAdder waitingUsers = new LongAdder();
+    private final LongAdder waitMillis = new LongAdder();
+
+    private ConnectionStrategy(Mode mode, int poolSize) {
+        if (poolSize > 0 && mode == Mode.PER_USER) {
+            throw new IllegalArgumentException("POOL_SIZE needs CONNECTIONS=shared or http2, per-user pools can't be capped");
+        }
+        this.mode = mode;
+        this.poolSize = poolSize;
+        this.leases = poolSize > 0 ? new Semaphore(poolSize) : null;
+    }
+
+    public static ConnectionStrategy fromSystemProperties() {
+        return new ConnectionStrategy(Mode.parse(System.getProperty("CONNECTIONS", "per-user")),
+                Integer.parseInt(System.getProperty("POOL_SIZE", "0")));
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public HttpProtocolBuilder apply(HttpProtocolBuilder protocol) {
+        return switch (mode) {
+            case PER_USER -> protocol;
+            case SHARED -> protocol.shareConnections();
+            case HTTP2 -> protocol.shareConnections().enableHttp2();
+        };
+    }
+
+    public boolean capped() {
+        return leases != null;
+    }
+
+    // non-blocking, the scenario polls it with a pause so no injector thread ever waits
+    public boolean tryLease() {
+        return leases.tryAcquire();
+    }
+
+    public void leased(long waitedMillis) {
+        if (waitedMillis > 0) {
+            waitingUsers.increment();
+            waitMillis.add(waitedMillis);
+        }
+    }
+
+    public void release() {
+        leases.release();
+    }
+
+    @Override
+    public String toString() {
+        String name = mode.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        if (!capped()) {
+            return name;
+        }
+        return "%s, pool of %d (%d users waited %.1f s in total)".formatted(
+                name, poolSize, waitingUsers.sum(), waitMillis.sum() / 1000.0);
+    }
+}
@@ -0,0 +1,189 @@
+package videogamedb.scriptfundamentals;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.gatling.javaapi.core.CheckBuilder;
+import io.gatling.javaapi.core.Session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.gatling.javaapi.core.CoreDsl.bodyBytes;
+
+/**
+ * Validates a {@code /videogame} list response in a single streaming pass: the body is tokenized once and every
+ * game is offered to all assertions, instead of one JSON tree walk per JSONPath/JMESPath check.
+ * <p>
+ * Assertions are declared up front, then {@link #build()} turns them into one Gatling check that fails with the list
+ * of violated assertions.
+ */
+public final class GameListCheck {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final List<Function<Session, Assertion>> assertions = new ArrayList<>();
+
+    /**
+     * State of one assertion while one response is being read, so concurrent responses never share it.
+     */
+    private interface Assertion {
+
+        void accept(Game game);
+
+        // null when the assertion holds
+        String violation();
+    }
+
+    private record Game(long id, String name, String category, long reviewScore) {
+    }
+
+    public static GameListCheck games() {
+        return new GameListCheck();
+    }
+
+    /**
+     * The game with {@code id} exists and is named {@code name}.
+     */
+    public GameListCheck nameOf(long id, String name) {
+        assertions.add(session -> new Assertion() {
+            private String found;
+
+            @Override
+            public void accept(Game game) {
+                if (game.id() == id) {
+                    found = game.name();
+                }
+            }
+
+            @Override
+            public String violation() {
+                return name.equals(found) ? null : "name of game %d is %s, expected %s".formatted(id, found, name);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * A game named {@code name} exists in {@code category}.
+     */
+    public GameListCheck hasGame(String category, String name) {
+        return addExists(game -> category.equals(game.category()) && name.equals(game.name()),
+                "no game %s in category %s".formatted(name, category));
+    }
+
+    public GameListCheck containsName(String name) {
+        return addExists(game -> name.equals(game.name()), "no game named " + name);
+    }
+
+    /**
+     * A game named {@code name} has a review score strictly above {@code minScore}.
+     */
+    public GameListCheck scoreAbove(long minScore, String name) {
+        return addExists(game -> game.reviewScore() > minScore && name.equals(game.name()),
+                "no game %s with review score above %d".formatted(name, minScore));
+    }
+
+    /**
+     * Some game is named after the session attribute {@code key}, or none is when {@code expected} is false.
+     */
+    public GameListCheck containsSessionValue(String key, boolean expected) {
+        assertions.add(session -> {
+            String name = session.getString(key);
+            return new Assertion() {
+                private boolean found;
+
+                @Override
+                public void accept(Game game) {
+                    found |= Objects.equals(name, game.name());
+                }
+
+                @Override
+                public String violation() {
+                    return found == expected ? null
+                            : "game %s from session attribute %s %s".formatted(name, key, expected ? "is missing" : "is present");
+                }
+            };
+        });
+        return this;
+    }
+
+    private GameListCheck addExists(Predicate<Game> predicate, String message) {
+        assertions.add(session -> new Assertion() {
+            private boolean found;
+
+            @Override
+            public void accept(Game game) {
+                found |= predicate.test(game);
+            }
+
+            @Override
+            public String violation() {
+                return found ? null : message;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Runs every assertion over the body and returns the violations, empty when the response is valid.
+     */
+    public List<String> violations(byte[] body, Session session) {
+        List<Assertion> states = new ArrayList<>(assertions.size());
+        for (Function<Session, Assertion> assertion : assertions) {
+            states.add(assertion.apply(session));
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return List.of("response is not a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Game game = readGame(parser);
+                for (Assertion state : states) {
+                    state.accept(game);
+                }
+            }
+        } catch (IOException e) {
+            return List.of("invalid JSON: " + e.getMessage());
+        }
+        List<String> violations = new ArrayList<>();
+        for (Assertion state : states) {
+            String violation = state.violation();
+            if (violation != null) {
+                violations.add(violation);
+            }
+        }
+        return violations;
+    }
+
+    private static Game readGame(JsonParser parser) throws IOException {
+        long id = Long.MIN_VALUE;
+        long reviewScore = Long.MIN_VALUE;
+        String name = null;
+        String category = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsLong(Long.MIN_VALUE);
+                case "name" -> name = parser.getValueAsString();
+                case "category" -> category = parser.getValueAsString();
+                case "reviewScore" -> reviewScore = parser.getValueAsLong(Long.MIN_VALUE);
+                default -> {
+                    if (value.isStructStart()) {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return new Game(id, name, category, reviewScore);
+    }
+
+    public CheckBuilder build() {
+        return bodyBytes().transformWithSession(this::violations).is(List.of());
+    }
+}
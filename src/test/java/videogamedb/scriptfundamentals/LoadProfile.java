@@ -0,0 +1,364 @@
+package videogamedb.scriptfundamentals;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigValueType;
+import io.gatling.javaapi.core.ClosedInjectionStep;
+import io.gatling.javaapi.core.OpenInjectionStep;
+import io.gatling.javaapi.core.PopulationBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Simulation;
+import io.gatling.javaapi.core.ThrottleStep;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.gatling.javaapi.core.CoreDsl.atOnceUsers;
+import static io.gatling.javaapi.core.CoreDsl.constantConcurrentUsers;
+import static io.gatling.javaapi.core.CoreDsl.constantUsersPerSec;
+import static io.gatling.javaapi.core.CoreDsl.holdFor;
+import static io.gatling.javaapi.core.CoreDsl.incrementConcurrentUsers;
+import static io.gatling.javaapi.core.CoreDsl.incrementUsersPerSec;
+import static io.gatling.javaapi.core.CoreDsl.jumpToRps;
+import static io.gatling.javaapi.core.CoreDsl.nothingFor;
+import static io.gatling.javaapi.core.CoreDsl.rampConcurrentUsers;
+import static io.gatling.javaapi.core.CoreDsl.rampUsers;
+import static io.gatling.javaapi.core.CoreDsl.rampUsersPerSec;
+import static io.gatling.javaapi.core.CoreDsl.reachRps;
+import static io.gatling.javaapi.core.CoreDsl.stressPeakUsers;
+
+/**
+ * Injection profile read from a HOCON file, so the shape of a run (open or closed model, steps, RPS throttling,
+ * maximum duration) changes without recompiling the simulation.
+ * <p>
+ * Profiles live in {@code src/test/resources/profiles}; {@code -DLOAD_PROFILE} selects one by name or points at a
+ * file. System properties override profile values, which is how {@code USERS}, {@code RAMP_DURATION} and friends
+ * reach the profiles through {@code ${?USERS}} substitutions. Durations take HOCON units ({@code 30s}, {@code 2m}),
+ * bare numbers are seconds. See {@code profiles/README.md} for the step types.
+ * <p>
+ * In a distributed run ({@code INJECTOR_INDEX} of {@code INJECTOR_COUNT}, set by the injector coordinator) every user
+ * count, arrival rate and RPS target is this injector's share of the profile, and injection, throttling and the
+ * maximum duration wait until the common start time {@code START_AT} (epoch milliseconds).
+ * <p>
+ * {@code WARM_UP_DURATION} (seconds) runs a JIT warm-up phase before the first step: {@code WARM_UP_RATE} users per
+ * second in the open model, {@code WARM_UP_USERS} concurrent users in the closed one (10 by default). The warm-up users
+ * are a population of their own, see {@link #warmUp(ScenarioBuilder)}: the profile's steps, throttling and maximum
+ * duration start once the warm-up is over.
+ */
+public final class LoadProfile {
+
+    public enum Model { OPEN, CLOSED }
+
+    private static final String PROFILE_DIRECTORY = "profiles/";
+    public static final String WARM_UP_SUFFIX = " (warm-up)";
+
+    /**
+     * Part of the load run by one injector: integer counts are split with the remainder going to the first injectors,
+     * rates are divided evenly.
+     */
+    private record Share(int index, int count) {
+
+        static Share fromSystemProperties() {
+            return new Share(Integer.parseInt(System.getProperty("INJECTOR_INDEX", "0")),
+                    Integer.parseInt(System.getProperty("INJECTOR_COUNT", "1")));
+        }
+
+        int users(int total) {
+            return total / count + (index < total % count ? 1 : 0);
+        }
+
+        double rate(double total) {
+            return total / count;
+        }
+
+        // a zero RPS target would block the injector, so every injector keeps at least 1
+        int rps(int total) {
+            return Math.max(1, users(total));
+        }
+    }
+
+    private final String name;
+    private final Model model;
+    private final List<OpenInjectionStep> openSteps;
+    private final List<ClosedInjectionStep> closedSteps;
+    private final List<ThrottleStep> throttleSteps;
+    private final Duration maxDuration;
+    // empty without WARM_UP_DURATION
+    private final List<OpenInjectionStep> warmUpOpenSteps;
+    private final List<ClosedInjectionStep> warmUpClosedSteps;
+
+    private LoadProfile(String name, Model model, List<OpenInjectionStep> openSteps,
+                        List<ClosedInjectionStep> closedSteps, List<ThrottleStep> throttleSteps, Duration maxDuration,
+                        List<OpenInjectionStep> warmUpOpenSteps, List<ClosedInjectionStep> warmUpClosedSteps) {
+        this.name = name;
+        this.model = model;
+        this.openSteps = openSteps;
+        this.closedSteps = closedSteps;
+        this.throttleSteps = throttleSteps;
+        this.maxDuration = maxDuration;
+        this.warmUpOpenSteps = warmUpOpenSteps;
+        this.warmUpClosedSteps = warmUpClosedSteps;
+    }
+
+    /**
+     * Loads the profile named by {@code -DLOAD_PROFILE}, or {@code defaultProfile} when it is not set.
+     */
+    public static LoadProfile fromSystemProperties(String defaultProfile) {
+        return fromSystemProperties(defaultProfile, Map.of());
+    }
+
+    /**
+     * Same as {@link #fromSystemProperties(String)}, with values the simulation derives for the profile's
+     * substitutions (e.g. an arrival rate computed from a target RPS); system properties still win over them.
+     */
+    public static LoadProfile fromSystemProperties(String defaultProfile, Map<String, String> derived) {
+        return load(System.getProperty("LOAD_PROFILE", defaultProfile), derived);
+    }
+
+    /**
+     * Loads {@code profiles/<nameOrPath>.conf} from the classpath, or the file {@code nameOrPath} when it exists.
+     */
+    public static LoadProfile load(String nameOrPath) {
+        return load(nameOrPath, Map.of());
+    }
+
+    private static LoadProfile load(String nameOrPath, Map<String, String> derived) {
+        File file = new File(nameOrPath);
+        Config profile = file.isFile()
+                ? ConfigFactory.parseFile(file, ConfigParseOptions.defaults().setAllowMissing(false))
+                : ConfigFactory.parseResourcesAnySyntax(PROFILE_DIRECTORY + nameOrPath,
+                ConfigParseOptions.defaults().setAllowMissing(false));
+        // system properties go on top, so ${?USERS} style substitutions see them
+        Config resolved = ConfigFactory.parseProperties(System.getProperties())
+                .withFallback(ConfigFactory.parseMap(derived))
+                .withFallback(profile)
+                .resolve();
+        try {
+            return parse(nameOrPath, resolved, Share.fromSystemProperties());
+        } catch (ConfigException e) {
+            throw new IllegalArgumentException("Invalid load profile " + nameOrPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static LoadProfile parse(String name, Config config, Share share) {
+        Model model = Model.valueOf(config.getString("model").toUpperCase(Locale.ROOT));
+        List<OpenInjectionStep> openSteps = new ArrayList<>();
+        List<ClosedInjectionStep> closedSteps = new ArrayList<>();
+        List<OpenInjectionStep> warmUpOpenSteps = new ArrayList<>();
+        List<ClosedInjectionStep> warmUpClosedSteps = new ArrayList<>();
+        String startAt = System.getProperty("START_AT");
+        Duration untilStart = startAt == null
+                ? Duration.ZERO
+                : Duration.ofMillis(Math.max(0, Long.parseLong(startAt) - System.currentTimeMillis()));
+        String warmUp = System.getProperty("WARM_UP_DURATION");
+        Duration warmUpDuration = warmUp != null && Double.parseDouble(warmUp) > 0
+                ? Duration.ofMillis(Math.round(Double.parseDouble(warmUp) * 1000))
+                : Duration.ZERO;
+        if (!warmUpDuration.isZero()) {
+            // light load first, so the injector's hot paths are compiled before the profile's load starts
+            if (model == Model.OPEN) {
+                warmUpOpenSteps.add(nothingFor(untilStart));
+                warmUpOpenSteps.add(constantUsersPerSec(share.rate(Double.parseDouble(System.getProperty("WARM_UP_RATE", "10"))))
+                        .during(warmUpDuration));
+            } else {
+                warmUpClosedSteps.add(constantConcurrentUsers(0).during(untilStart));
+                warmUpClosedSteps.add(constantConcurrentUsers(share.users(Integer.parseInt(System.getProperty("WARM_UP_USERS", "10"))))
+                        .during(warmUpDuration));
+            }
+        }
+        Duration delay = untilStart.plus(warmUpDuration);
+        if (startAt != null || !warmUpDuration.isZero()) {
+            if (model == Model.OPEN) {
+                openSteps.add(nothingFor(delay));
+            } else {
+                closedSteps.add(constantConcurrentUsers(0).during(delay));
+            }
+        }
+        List<? extends Config> steps = config.getConfigList("steps");
+        for (int i = 0; i < steps.size(); i++) {
+            Config step = steps.get(i);
+            String type = step.getString("type");
+            try {
+                if (model == Model.OPEN) {
+                    openSteps.add(openStep(type, step, share));
+                } else {
+                    closedSteps.add(closedStep(type, step, share));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Step %d of load profile %s: %s".formatted(i + 1, name, e.getMessage()), e);
+            }
+        }
+        List<ThrottleStep> throttleSteps = new ArrayList<>();
+        if (config.hasPath("throttle")) {
+            for (Config step : config.getConfigList("throttle")) {
+                throttleSteps.addAll(throttleSteps(step.getString("type"), step, share));
+            }
+        }
+        Duration maxDuration = config.hasPath("max-duration") ? duration(config, "max-duration") : null;
+        // throttling and max duration count from the simulation start, not from the first step: both wait for
+        // START_AT and the warm-up like the injection does, with no request of the profile's users allowed meanwhile
+        if (!delay.isZero()) {
+            if (!throttleSteps.isEmpty()) {
+                throttleSteps.addAll(0, List.of(jumpToRps(0), holdFor(delay)));
+            }
+            if (maxDuration != null) {
+                maxDuration = maxDuration.plus(delay);
+            }
+        }
+        return new LoadProfile(name, model, openSteps, closedSteps, throttleSteps, maxDuration, warmUpOpenSteps,
+                warmUpClosedSteps);
+    }
+
+    private static OpenInjectionStep openStep(String type, Config step, Share share) {
+        return switch (type) {
+            case "nothing-for" -> nothingFor(duration(step, "duration"));
+            case "at-once" -> atOnceUsers(share.users(step.getInt("users")));
+            case "ramp" -> rampUsers(share.users(step.getInt("users"))).during(duration(step, "during"));
+            case "stress-peak" -> stressPeakUsers(share.users(step.getInt("users"))).during(duration(step, "during"));
+            case "constant-rate" -> {
+                var constant = constantUsersPerSec(share.rate(step.getDouble("rate"))).during(duration(step, "during"));
+                yield randomized(step) ? constant.randomized() : constant;
+            }
+            case "ramp-rate" -> {
+                var ramp = rampUsersPerSec(share.rate(step.getDouble("from")))
+                        .to(share.rate(step.getDouble("to")))
+                        .during(duration(step, "during"));
+                yield randomized(step) ? ramp.randomized() : ramp;
+            }
+            case "increment-rate" -> {
+                var stairs = incrementUsersPerSec(share.rate(step.getDouble("increment")))
+                        .times(step.getInt("times"))
+                        .eachLevelLasting(duration(step, "level-duration"));
+                if (step.hasPath("ramp-duration")) {
+                    stairs = stairs.separatedByRampsLasting(duration(step, "ramp-duration"));
+                }
+                yield step.hasPath("starting-from") ? stairs.startingFrom(share.rate(step.getDouble("starting-from"))) : stairs;
+            }
+            default -> throw new IllegalArgumentException("unknown open-model step type " + type);
+        };
+    }
+
+    private static ClosedInjectionStep closedStep(String type, Config step, Share share) {
+        return switch (type) {
+            case "constant-concurrent" ->
+                    constantConcurrentUsers(share.users(step.getInt("users"))).during(duration(step, "during"));
+            case "ramp-concurrent" -> rampConcurrentUsers(share.users(step.getInt("from")))
+                    .to(share.users(step.getInt("to")))
+                    .during(duration(step, "during"));
+            case "increment-concurrent" -> {
+                var stairs = incrementConcurrentUsers(share.users(step.getInt("increment")))
+                        .times(step.getInt("times"))
+                        .eachLevelLasting(duration(step, "level-duration"));
+                if (step.hasPath("ramp-duration")) {
+                    stairs = stairs.separatedByRampsLasting(duration(step, "ramp-duration"));
+                }
+                yield step.hasPath("starting-from") ? stairs.startingFrom(share.users(step.getInt("starting-from"))) : stairs;
+            }
+            default -> throw new IllegalArgumentException("unknown closed-model step type " + type);
+        };
+    }
+
+    private static List<ThrottleStep> throttleSteps(String type, Config step, Share share) {
+        return switch (type) {
+            case "reach-rps" -> List.of(reachRps(share.rps(step.getInt("target"))).in(duration(step, "in")));
+            case "jump-to-rps" -> List.of(jumpToRps(share.rps(step.getInt("target"))));
+            case "hold" -> List.of(holdFor(duration(step, "duration")));
+            // from, from + increment, ... each reached in ramp-duration and held for level-duration
+            case "staircase" -> {
+                List<ThrottleStep> stairs = new ArrayList<>();
+                int from = step.getInt("from");
+                int increment = step.getInt("increment");
+                Duration ramp = duration(step, "ramp-duration");
+                Duration level = duration(step, "level-duration");
+                for (int i = 0; i < step.getInt("times"); i++) {
+                    stairs.add(reachRps(share.rps(from + i * increment)).in(ramp));
+                    stairs.add(holdFor(level));
+                }
+                yield stairs;
+            }
+            default -> throw new IllegalArgumentException("unknown throttle step type " + type);
+        };
+    }
+
+    private static boolean randomized(Config step) {
+        return step.hasPath("randomized") && step.getBoolean("randomized");
+    }
+
+    // bare numbers are seconds, like the USERS/RAMP_DURATION/TEST_DURATION properties have always been
+    private static Duration duration(Config config, String path) {
+        if (config.getValue(path).valueType() == ConfigValueType.NUMBER) {
+            return Duration.ofMillis(Math.round(config.getDouble(path) * 1000));
+        }
+        String value = config.getString(path).trim();
+        if (value.matches("\\d+(\\.\\d+)?")) {
+            return Duration.ofMillis(Math.round(Double.parseDouble(value) * 1000));
+        }
+        return config.getDuration(path);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Model model() {
+        return model;
+    }
+
+    public Optional<Duration> maxDuration() {
+        return Optional.ofNullable(maxDuration);
+    }
+
+    /**
+     * The profile's users of {@code scenario}, throttled by the profile: the throttle applies to them only, not to the
+     * warm-up users.
+     */
+    public PopulationBuilder inject(ScenarioBuilder scenario) {
+        PopulationBuilder population = model == Model.OPEN
+                ? scenario.injectOpen(openSteps)
+                : scenario.injectClosed(closedSteps);
+        return throttleSteps.isEmpty() ? population : population.throttle(throttleSteps);
+    }
+
+    /**
+     * The warm-up users of {@code WARM_UP_DURATION}, if set: a copy of {@code scenario} named with
+     * {@value #WARM_UP_SUFFIX}, so its users and requests can be told from the measured ones. Like every other user
+     * they run the scenario to its end, so the users of a scenario looping until the maximum duration keep running
+     * after the warm-up.
+     */
+    public Optional<PopulationBuilder> warmUp(ScenarioBuilder scenario) {
+        if (warmUpOpenSteps.isEmpty() && warmUpClosedSteps.isEmpty()) {
+            return Optional.empty();
+        }
+        ScenarioBuilder warmUp = scenario.make(measured ->
+                new io.gatling.core.structure.ScenarioBuilder(measured.name() + WARM_UP_SUFFIX, measured.actionBuilders()));
+        return Optional.of(model == Model.OPEN
+                ? warmUp.injectOpen(warmUpOpenSteps)
+                : warmUp.injectClosed(warmUpClosedSteps));
+    }
+
+    /**
+     * Applies the maximum duration of the profile to a simulation set-up.
+     */
+    public Simulation.SetUp shape(Simulation.SetUp setUp) {
+        if (maxDuration != null) {
+            setUp.maxDuration(maxDuration);
+        }
+        return setUp;
+    }
+
+    @Override
+    public String toString() {
+        return "%s (%s model, %d steps%s%s%s)".formatted(name, model.name().toLowerCase(Locale.ROOT),
+                model == Model.OPEN ? openSteps.size() : closedSteps.size(),
+                warmUpOpenSteps.isEmpty() && warmUpClosedSteps.isEmpty() ? "" : ", warm-up",
+                throttleSteps.isEmpty() ? "" : ", throttled",
+                maxDuration == null ? "" : ", max " + maxDuration.toSeconds() + "s");
+    }
+}
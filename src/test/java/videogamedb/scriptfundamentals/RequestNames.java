@@ -0,0 +1,89 @@
+package videogamedb.scriptfundamentals;
+
+import io.gatling.javaapi.core.Session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stable request names for the stats. Gatling keeps one stats bucket per resolved request name, so a name such as
+ * {@code "Create New Game - #{name}"} opens a bucket for every generated game: injector memory grows for the whole
+ * soak and the report takes longer with every name. The EL parts are removed from the name
+ * ({@code "Create New Game"}) and the template is kept, to be resolved for the users traced by the debug sink only.
+ */
+public final class RequestNames {
+
+    private static final Pattern EL = Pattern.compile("#\\{([^}]*)}");
+    private static final Pattern EMPTY_BRACKETS = Pattern.compile("\\[\\s*]|\\(\\s*\\)");
+    // left at either end once the EL parts are gone, as in "Get game - " or "- #{name} and #{id}"
+    private static final Set<String> SEPARATORS = Set.of("-", ":", ",", "/", "&", "|", "and");
+
+    // stable name -> the templates it was made from
+    private static final Map<String, List<String>> TEMPLATES = new ConcurrentHashMap<>();
+
+    private RequestNames() {
+    }
+
+    /**
+     * The name of {@code template} without its EL parts; names without EL are returned as they are.
+     */
+    public static String stable(String template) {
+        if (!template.contains("#{")) {
+            return template;
+        }
+        String text = EMPTY_BRACKETS.matcher(EL.matcher(template).replaceAll(" ")).replaceAll(" ");
+        List<String> words = new ArrayList<>(Arrays.asList(text.trim().split("\\s+")));
+        while (!words.isEmpty() && SEPARATORS.contains(words.get(0))) {
+            words.remove(0);
+        }
+        while (!words.isEmpty() && SEPARATORS.contains(words.get(words.size() - 1))) {
+            words.remove(words.size() - 1);
+        }
+        if (words.isEmpty() || words.get(0).isEmpty()) {
+            throw new IllegalArgumentException("Request name " + template + " has no static part to keep in the stats");
+        }
+        int last = words.size() - 1;
+        if (words.get(last).endsWith(",")) {
+            words.set(last, words.get(last).substring(0, words.get(last).length() - 1));
+        }
+        String name = String.join(" ", words);
+        TEMPLATES.compute(name, (key, templates) -> {
+            List<String> merged = templates == null ? new ArrayList<>() : new ArrayList<>(templates);
+            if (!merged.contains(template)) {
+                merged.add(template);
+            }
+            return List.copyOf(merged);
+        });
+        return name;
+    }
+
+    /**
+     * The dynamic values of a request under its stable name, e.g. {@code name=Doom}, or null when the name had none.
+     * Only the session attribute named by each EL part is resolved, EL functions are not applied.
+     */
+    public static String dynamicValues(String stableName, Session session) {
+        List<String> templates = TEMPLATES.get(stableName);
+        if (templates == null) {
+            return null;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String template : templates) {
+            Matcher el = EL.matcher(template);
+            while (el.find()) {
+                String attribute = el.group(1).split("[.(\\[]", 2)[0].trim();
+                if (!values.isEmpty()) {
+                    values.append(", ");
+                }
+                Object value = session.contains(attribute) ? session.get(attribute) : "?";
+                values.append(attribute).append('=').append(value);
+            }
+        }
+        return values.toString();
+    }
+}
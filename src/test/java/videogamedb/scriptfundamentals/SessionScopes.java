@@ -0,0 +1,107 @@
+package videogamedb.scriptfundamentals;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Session;
+import scala.Tuple2;
+import scala.collection.Iterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static io.gatling.javaapi.core.CoreDsl.exec;
+
+/**
+ * Keeps virtual user sessions small. A session keeps every attribute it was ever given until the user ends: feeder
+ * records, saved check results, values of earlier iterations. {@link #scoped} drops whatever a block added once the
+ * block is done, so a feeder record or a saved value lives as long as the requests reading it, not as long as the user.
+ * <p>
+ * Attributes existing before the block are left alone, including their values overwritten in the block, and so are
+ * Gatling's own attributes ({@code gatling.*}: cookies, HTTP cache, ...). A block keeps what it adds for later steps by
+ * naming it in {@code kept}.
+ */
+public final class SessionScopes {
+
+    private static final String SCOPE_KEY_PREFIX = "sessionScope.";
+    private static final String GATLING_PREFIX = "gatling.";
+    private static final AtomicInteger SCOPES = new AtomicInteger();
+
+    // rough HotSpot sizes with compressed oops: object header, a map entry, a boxed number
+    private static final int OBJECT_BYTES = 16;
+    private static final int ENTRY_BYTES = 32;
+    private static final int STRING_BYTES = 40;
+
+    /**
+     * Estimated size of a session's attributes, in number and in bytes.
+     */
+    public record Footprint(int attributes, long bytes) {
+    }
+
+    private SessionScopes() {
+    }
+
+    /**
+     * {@code block}, then the removal of the attributes it added except {@code kept}. {@code measure}, when not null,
+     * gets the session as it is at the end of the block, before the removal.
+     */
+    public static ChainBuilder scoped(ChainBuilder block, Consumer<Session> measure, String... kept) {
+        String scopeKey = SCOPE_KEY_PREFIX + SCOPES.incrementAndGet();
+        Set<String> keep = Set.of(kept);
+        return exec(session -> session.set(scopeKey, session.asScala().attributes()))
+                .exec(block)
+                .exec(session -> {
+                    if (measure != null) {
+                        measure.accept(session);
+                    }
+                    // the attributes at the start of the block, shared with the session then, not copied
+                    scala.collection.immutable.Map<String, Object> before = session.get(scopeKey);
+                    List<String> added = new ArrayList<>();
+                    Iterator<String> keys = session.asScala().attributes().keysIterator();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        if (!before.contains(key) && !keep.contains(key) && !key.startsWith(GATLING_PREFIX)) {
+                            added.add(key);
+                        }
+                    }
+                    return session.removeAll(added.toArray(String[]::new));
+                });
+    }
+
+    /**
+     * Estimates the attributes of {@code session}: keys and values, strings and boxed values counted at their usual
+     * HotSpot size, byte arrays and collections with their content. Gatling's own attributes are left out.
+     */
+    public static Footprint footprint(Session session) {
+        int attributes = 0;
+        long bytes = 0;
+        Iterator<Tuple2<String, Object>> entries = session.asScala().attributes().iterator();
+        while (entries.hasNext()) {
+            Tuple2<String, Object> entry = entries.next();
+            if (entry._1().startsWith(GATLING_PREFIX)) {
+                continue;
+            }
+            attributes++;
+            bytes += ENTRY_BYTES + bytes(entry._1()) + bytes(entry._2());
+        }
+        return new Footprint(attributes, bytes);
+    }
+
+    private static long bytes(Object value) {
+        return switch (value) {
+            case null -> 0;
+            // compact strings: one byte per character unless a character needs two
+            case String s -> STRING_BYTES + (s.chars().allMatch(c -> c < 256) ? s.length() : 2L * s.length());
+            case byte[] array -> OBJECT_BYTES + array.length;
+            case Collection<?> collection -> OBJECT_BYTES + collection.stream()
+                    .mapToLong(element -> ENTRY_BYTES + bytes(element)).sum();
+            case Map<?, ?> map -> OBJECT_BYTES + map.entrySet().stream()
+                    .mapToLong(entry -> ENTRY_BYTES + bytes(entry.getKey()) + bytes(entry.getValue())).sum();
+            // numbers, booleans, and a scope's snapshot, which shares its entries with the session
+            default -> OBJECT_BYTES;
+        };
+    }
+}
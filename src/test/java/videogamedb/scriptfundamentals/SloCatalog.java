@@ -0,0 +1,158 @@
+package videogamedb.scriptfundamentals;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import io.gatling.javaapi.core.Assertion;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import static io.gatling.javaapi.core.CoreDsl.details;
+import static io.gatling.javaapi.core.CoreDsl.global;
+
+/**
+ * Service level objectives read from a HOCON catalog and turned into Gatling assertions, so a run that misses them
+ * fails: Gatling then exits with an error, which fails {@code mvn gatling:test}. Gatling 3.14 no longer writes its
+ * assertions as a JUnit file, so {@link SloReport} writes one test case per gate to {@code SLO_REPORT_FOLDER}
+ * (default {@code target/slo-reports}).
+ * <p>
+ * The catalog has {@code global} gates for all requests together and {@code requests} gates keyed by request name as
+ * it appears in the report, without its EL parts (see {@link RequestNames}). A simulation only gets the request gates
+ * of the requests it declares, so one catalog serves them all. {@code simulations.<simple class name>} overrides
+ * both for one simulation. Gates: {@code p50}, {@code p95}, {@code p99}, {@code max} (HOCON durations, bare numbers
+ * are milliseconds), {@code failed-percent} and {@code min-rps}.
+ * <p>
+ * Catalogs live in {@code src/test/resources/slo}; {@code -DSLO_CATALOG} selects one by name or points at a file,
+ * {@code -DSLO_CATALOG=none} runs without assertions.
+ */
+public final class SloCatalog {
+
+    private static final String CATALOG_DIRECTORY = "slo/";
+    private static final String NONE = "none";
+
+    /**
+     * One objective: {@code metric} of {@code request}, or of all requests when {@code request} is null, within
+     * {@code limit} (milliseconds, percent or requests per second).
+     */
+    public record Gate(String request, String metric, double limit) {
+
+        public Assertion toAssertion() {
+            Assertion.WithPath path = request == null ? global() : details(request);
+            return switch (metric) {
+                case "p50" -> path.responseTime().percentile(50).lte((int) limit);
+                case "p95" -> path.responseTime().percentile(95).lte((int) limit);
+                case "p99" -> path.responseTime().percentile(99).lte((int) limit);
+                case "max" -> path.responseTime().max().lte((int) limit);
+                case "failed-percent" -> path.failedRequests().percent().lte(limit);
+                case "min-rps" -> path.requestsPerSec().gte(limit);
+                default -> throw new IllegalStateException(metric);
+            };
+        }
+
+        public boolean met(double actual) {
+            return metric.equals("min-rps") ? actual >= limit : actual <= limit;
+        }
+
+        @Override
+        public String toString() {
+            String unit = switch (metric) {
+                case "failed-percent" -> " %";
+                case "min-rps" -> " rps";
+                default -> " ms";
+            };
+            return "%s: %s %s %s%s".formatted(request == null ? "Global" : request, metric,
+                    metric.equals("min-rps") ? ">=" : "<=", BigDecimal.valueOf(limit).stripTrailingZeros().toPlainString(), unit);
+        }
+    }
+
+    private static final List<String> METRICS = List.of("p50", "p95", "p99", "max", "failed-percent", "min-rps");
+
+    private final String name;
+    private final Config catalog;
+
+    private SloCatalog(String name, Config catalog) {
+        this.name = name;
+        this.catalog = catalog;
+    }
+
+    public static SloCatalog fromSystemProperties() {
+        return load(System.getProperty("SLO_CATALOG", "default"));
+    }
+
+    /**
+     * Loads {@code slo/<nameOrPath>.conf} from the classpath, or the file {@code nameOrPath} when it exists.
+     */
+    public static SloCatalog load(String nameOrPath) {
+        if (nameOrPath.equalsIgnoreCase(NONE)) {
+            return new SloCatalog(NONE, ConfigFactory.empty());
+        }
+        File file = new File(nameOrPath);
+        Config catalog = file.isFile()
+                ? ConfigFactory.parseFile(file, ConfigParseOptions.defaults().setAllowMissing(false))
+                : ConfigFactory.parseResources(CATALOG_DIRECTORY + nameOrPath + ".conf",
+                ConfigParseOptions.defaults().setAllowMissing(false));
+        return new SloCatalog(nameOrPath, catalog.resolve());
+    }
+
+    /**
+     * Gates of {@code simulation}, for the requests named {@code requestNames}. Catalog entries for other requests
+     * are left out: Gatling fails assertions on requests a run never sent.
+     */
+    public List<Gate> gates(String simulation, Collection<String> requestNames) {
+        Config gates = catalog.withoutPath("simulations");
+        String override = "simulations." + simulation;
+        if (catalog.hasPath(override)) {
+            gates = catalog.getConfig(override).withFallback(gates);
+        }
+        List<Gate> selected = new ArrayList<>();
+        try {
+            if (gates.hasPath("global")) {
+                selected.addAll(gates(null, gates.getConfig("global")));
+            }
+            if (gates.hasPath("requests")) {
+                ConfigObject requests = gates.getObject("requests");
+                // request names hold spaces and dots, so they are read as keys of the object rather than as paths
+                for (String request : new TreeSet<>(requests.keySet())) {
+                    if (requestNames.contains(request)) {
+                        selected.addAll(gates(request, ((ConfigObject) requests.get(request)).toConfig()));
+                    }
+                }
+            }
+        } catch (ConfigException e) {
+            throw new IllegalArgumentException("Invalid SLO catalog " + name + ": " + e.getMessage(), e);
+        }
+        return selected;
+    }
+
+    private static List<Gate> gates(String request, Config gates) {
+        List<Gate> selected = new ArrayList<>();
+        for (String metric : METRICS) {
+            if (!gates.hasPath(metric)) {
+                continue;
+            }
+            // bare numbers are milliseconds for HOCON durations
+            double limit = metric.startsWith("p") || metric.equals("max")
+                    ? gates.getDuration(metric).toMillis()
+                    : gates.getDouble(metric);
+            selected.add(new Gate(request, metric, limit));
+        }
+        for (String metric : gates.root().keySet()) {
+            if (!METRICS.contains(metric)) {
+                throw new IllegalArgumentException("unknown SLO gate " + metric);
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public String toString() {
+        return "SLO catalog " + name;
+    }
+}
@@ -0,0 +1,129 @@
+package videogamedb.scriptfundamentals;
+
+import videogamedb.reporting.StreamingReport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * JUnit report of a run's SLO gates, for CI servers that collect test reports: one test case per gate of
+ * {@link SloCatalog}, failed with the measured value when the run missed it. Gatling 3.14 evaluates the same gates as
+ * assertions and fails the run, but no longer writes them as a JUnit file, so they are evaluated again here from the
+ * run's {@code simulation.log}.
+ * <p>
+ * The log is aggregated by {@link StreamingReport}, so it is read in bounded memory whatever the length of the run.
+ * Percentiles are those of its HdrHistograms, so they may differ from Gatling's by its own rounding.
+ */
+public final class SloReport {
+
+    // one timeline bucket, the gates don't use it
+    private static final int TIMELINE_POINTS = 1;
+    private static final long CHUNK_BYTES = 32L << 20;
+
+    /**
+     * A gate with the value measured for it, NaN when the run sent none of its requests.
+     */
+    public record Outcome(SloCatalog.Gate gate, double actual) {
+
+        public boolean met() {
+            return !Double.isNaN(actual) && gate.met(actual);
+        }
+    }
+
+    private SloReport() {
+    }
+
+    /**
+     * Writes the report of the latest run of {@code simulationClassName} under {@code resultsFolder} to
+     * {@code reportFolder/TEST-<simple name>.xml}, if that run started after {@code notBefore} (epoch milliseconds).
+     * Returns the report, or empty when there is no such run.
+     */
+    public static Optional<Path> writeForLatestRun(Path resultsFolder, String simulationClassName,
+                                                   List<SloCatalog.Gate> gates, Path reportFolder, long notBefore) {
+        Optional<Path> log = StreamingReport.latestLog(resultsFolder, notBefore);
+        if (log.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Outcome> outcomes = evaluate(log.get(), simulationClassName, gates);
+        if (outcomes == null) {
+            return Optional.empty();
+        }
+        String simpleName = simulationClassName.substring(simulationClassName.lastIndexOf('.') + 1);
+        Path report = reportFolder.resolve("TEST-" + simpleName + ".xml");
+        try {
+            Files.createDirectories(reportFolder);
+            Files.writeString(report, junit(simulationClassName, outcomes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the SLO report " + report, e);
+        }
+        return Optional.of(report);
+    }
+
+    /**
+     * The outcome of every gate for the run logged in {@code simulationLog}, or null when the log is of another
+     * simulation.
+     */
+    public static List<Outcome> evaluate(Path simulationLog, String simulationClassName, List<SloCatalog.Gate> gates) {
+        if (!StreamingReport.simulation(simulationLog).equals(simulationClassName)) {
+            return null;
+        }
+        StreamingReport.Summary summary = StreamingReport.summarize(simulationLog,
+                Runtime.getRuntime().availableProcessors(), CHUNK_BYTES, TIMELINE_POINTS);
+        Map<String, StreamingReport.RequestSummary> requests = summary.requests().stream()
+                .collect(Collectors.toMap(StreamingReport.RequestSummary::name, Function.identity()));
+        List<Outcome> outcomes = new ArrayList<>(gates.size());
+        for (SloCatalog.Gate gate : gates) {
+            StreamingReport.RequestSummary request = gate.request() == null
+                    ? summary.global() : requests.get(gate.request());
+            outcomes.add(new Outcome(gate, value(request, gate.metric())));
+        }
+        return outcomes;
+    }
+
+    private static double value(StreamingReport.RequestSummary request, String metric) {
+        if (request == null || request.count() == 0) {
+            return Double.NaN;
+        }
+        return switch (metric) {
+            case "p50" -> request.p50();
+            case "p95" -> request.p95();
+            case "p99" -> request.p99();
+            case "max" -> request.max();
+            case "failed-percent" -> 100.0 * request.failed() / request.count();
+            case "min-rps" -> request.rps();
+            default -> throw new IllegalStateException(metric);
+        };
+    }
+
+    private static String junit(String simulationClassName, List<Outcome> outcomes) {
+        long failures = outcomes.stream().filter(outcome -> !outcome.met()).count();
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<testsuite name=\"").append(escape(simulationClassName)).append(" SLO\" tests=\"")
+                .append(outcomes.size()).append("\" failures=\"").append(failures).append("\" errors=\"0\">\n");
+        for (Outcome outcome : outcomes) {
+            xml.append("  <testcase classname=\"").append(escape(simulationClassName))
+                    .append("\" name=\"").append(escape(outcome.gate().toString())).append('"');
+            if (outcome.met()) {
+                xml.append("/>\n");
+                continue;
+            }
+            String actual = Double.isNaN(outcome.actual())
+                    ? "no request sent"
+                    : "actual %.1f".formatted(outcome.actual());
+            xml.append(">\n    <failure message=\"").append(escape(actual)).append("\"/>\n  </testcase>\n");
+        }
+        return xml.append("</testsuite>\n").toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
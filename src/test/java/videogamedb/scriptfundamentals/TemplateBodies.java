@@ -0,0 +1,40 @@
+package videogamedb.scriptfundamentals;
+
+import io.gatling.javaapi.core.Body;
+import templates.JsonTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.gatling.javaapi.core.CoreDsl.ByteArrayBody;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Gatling bodies backed by {@link JsonTemplate}: a drop-in for {@code ElFileBody} on JSON templates, compiled once
+ * per resource and rendered from session attributes without going through Gatling EL on every request.
+ */
+public final class TemplateBodies {
+
+    private static final Map<String, JsonTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private TemplateBodies() {
+    }
+
+    public static Body.WithBytes JsonTemplateBody(String resource) {
+        JsonTemplate template = TEMPLATES.computeIfAbsent(resource, TemplateBodies::load);
+        return ByteArrayBody(session -> template.render(session::get, session::contains));
+    }
+
+    private static JsonTemplate load(String resource) {
+        try (InputStream in = requireNonNull(
+                TemplateBodies.class.getClassLoader().getResourceAsStream(resource), "Couldn't locate " + resource)) {
+            return JsonTemplate.compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + resource, e);
+        }
+    }
+}
@@ -7,17 +7,13 @@ import io.gatling.javaapi.http.HttpProtocolBuilder;
 import io.netty.handler.codec.http.HttpResponseStatus;
 
 import java.time.Duration;
-import java.util.List;
 
 import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
 import static io.gatling.javaapi.core.CoreDsl.StringBody;
-import static io.gatling.javaapi.core.CoreDsl.atOnceUsers;
 import static io.gatling.javaapi.core.CoreDsl.exec;
 import static io.gatling.javaapi.core.CoreDsl.jmesPath;
 import static io.gatling.javaapi.core.CoreDsl.jsonPath;
 import static io.gatling.javaapi.core.CoreDsl.repeat;
-import static io.gatling.javaapi.core.CoreDsl.scenario;
-import static io.gatling.javaapi.http.HttpDsl.http;
 import static io.gatling.javaapi.http.HttpDsl.status;
 import static utils.SessionUtils.buildSessionKey;
 
@@ -53,7 +49,7 @@ public class VideoGameDb extends BaseSimulation {
     private static final ChainBuilder getGameById =
             repeat(2, "myCounter").on(
                     exec(http("[#{myCounter}] Get game by ID, except new game - %s".formatted(buildSessionKey(NEW_GAME_NAME_KEY)))
-                            .get(VIDEO_GAME_ENDPOINT + "/" + getRandomGameId())
+                            .get(randomGamePath())
                             .header(AUTH_HEADER, getAuthValue())
                             .check(status().is(HttpResponseStatus.OK.code()))
                             .check(jsonPath("$.name").saveAs(GAME_NAME_KEY))
@@ -64,37 +60,32 @@ public class VideoGameDb extends BaseSimulation {
             exec(http("Get all games")
                     .get(VIDEO_GAME_ENDPOINT.getName())
                     .check(status().is(HttpResponseStatus.OK.code()))
-                    // JSONPath checks
-                    .check(jsonPath("$[?(@.id==1)].name").is("Resident Evil 4"))
-                    .check(jsonPath("$[?(@.category=='Shooter' && @.name=='Doom')]").exists())
-                    .check(jsonPath("$[*].name").findAll()
-                            .transform(names -> names.contains("Minecraft")).is(true))
-                    // JMESPath checks
-                    .check(jmesPath("[? id == `3`].name").ofList().is(List.of("Tetris")))
-                    .check(jmesPath("[? reviewScore > `90`].name").ofList()
-                            .transform(list -> list.contains("Final Fantasy VII")).is(true))
-                    .check(jmesPath("contains([? id == `3`].name, 'Tetris')").is("true"))
-                    // check Gatling session variable in the response
-                    .check(jmesPath("[*].name").ofList()
-                            .transformWithSession((names, session) -> names.contains(session.getString(GAME_NAME_KEY)))
-                            .is(true))
-                    .check(jsonPath("$[*].name").findAll()
-                            .transformWithSession((names, session) ->
-                                    names.contains(session.getString(NEW_GAME_NAME_KEY)))
-                            .is(false))
+                    // all assertions in one streaming pass over the body, see GameListCheck
+                    .check(GameListCheck.games()
+                            .nameOf(1, "Resident Evil 4")
+                            .hasGame("Shooter", "Doom")
+                            .containsName("Minecraft")
+                            .nameOf(3, "Tetris")
+                            .scoreAbove(90, "Final Fantasy VII")
+                            // check Gatling session variables in the response
+                            .containsSessionValue(GAME_NAME_KEY, true)
+                            .containsSessionValue(NEW_GAME_NAME_KEY, false)
+                            .build())
             );
 
     private static final ChainBuilder logSessionValues =
             exec(session -> {
-                        System.out.println("Newly created game name: " + session.getString(NEW_GAME_NAME_KEY));
-                        System.out.println("Fetched game name by ID: " + session.getString(GAME_NAME_KEY));
-
                         // Session instances are immutable,
                         // meaning that methods such as set return a new instance
                         // and leave the original instance unmodified!
                         Session newSession = session.set(GAME_NAME_KEY, "Overwritten value");
-                        System.out.println("Overwritten Game Name value in session: " + newSession.getString(GAME_NAME_KEY));
 
+                        // traced through the async debug sink (-DDEBUG=true), never printed from the virtual user
+                        if (DEBUG.sampled(session.userId())) {
+                            DEBUG.log(session.userId(), "Newly created game name: " + session.getString(NEW_GAME_NAME_KEY));
+                            DEBUG.log(session.userId(), "Fetched game name by ID: " + session.getString(GAME_NAME_KEY));
+                            DEBUG.log(session.userId(), "Overwritten Game Name value in session: " + newSession.getString(GAME_NAME_KEY));
+                        }
                         return newSession;
                     }
             );
@@ -111,6 +102,6 @@ public class VideoGameDb extends BaseSimulation {
                     .exec(logSessionValues);
 
     public VideoGameDb() {
-        setUp(scenario.injectOpen(atOnceUsers(1))).protocols(httpProtocol);
+        setUp(scenario, LoadProfile.fromSystemProperties("single-user")).protocols(httpProtocol);
     }
 }
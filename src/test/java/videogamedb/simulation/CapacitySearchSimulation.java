@@ -0,0 +1,145 @@
+package videogamedb.simulation;
+
+import capacity.CapacitySearch;
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
+import static io.gatling.javaapi.core.CoreDsl.StringBody;
+import static io.gatling.javaapi.core.CoreDsl.exec;
+import static io.gatling.javaapi.core.CoreDsl.jmesPath;
+import static io.gatling.javaapi.core.CoreDsl.pause;
+
+/**
+ * Finds the highest rate each endpoint sustains within the SLO instead of hand-tuning users and ramps run after run.
+ * A pool of users sends the requests at the rate {@link CapacitySearch} sets, raising it level by level and bisecting
+ * once a level misses the SLO; see there for the search and its parameters.
+ * <p>
+ * {@code CAPACITY_ENDPOINTS} picks the endpoints and their order (default {@code authenticate,list,create,delete}).
+ * The result, per endpoint the maximum sustainable rate and the levels tried, is printed and written as JSON to
+ * {@code CAPACITY_RESULT} (default {@code target/capacity-search.json}).
+ */
+public class CapacitySearchSimulation extends BaseSimulation {
+
+    private enum Endpoint {
+        AUTHENTICATE("POST /authenticate"),
+        LIST("GET /videogame"),
+        CREATE("POST /videogame"),
+        DELETE("DELETE /videogame/{id}");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+
+        static Endpoint parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final String CREATE_GAME_BODY = """
+            {
+              "category": "Platform",
+              "name": "Mario",
+              "rating": "Mature",
+              "releaseDate": "2012-05-04",
+              "reviewScore": 85
+            }
+            """;
+
+    private static final String SLOT_KEY = "capacitySlot";
+
+    private static final List<Endpoint> ENDPOINTS = Arrays.stream(
+                    System.getProperty("CAPACITY_ENDPOINTS", "authenticate,list,create,delete").split(","))
+            .map(Endpoint::parse)
+            .toList();
+
+    private static final CapacitySearch SEARCH = CapacitySearch.fromSystemProperties(
+            ENDPOINTS.stream().map(endpoint -> endpoint.label).toList());
+
+    private static final Path RESULT = Path.of(System.getProperty("CAPACITY_RESULT", "target/capacity-search.json"));
+
+    private static final HttpProtocolBuilder httpProtocol = buildHttpProtocol();
+
+    // USERS is read by the profile, the maximum duration comes from the search settings
+    private static final LoadProfile loadProfile = LoadProfile.fromSystemProperties("capacity-search",
+            Map.of("CAPACITY_MAX_DURATION", String.valueOf(SEARCH.maxDuration().toSeconds() + 60)));
+
+    private static final ScenarioBuilder scenario = scenario("Capacity search")
+            .exec(authenticate)
+            .asLongAs(session -> SEARCH.running()).on(
+                    exec(session -> {
+                        CapacitySearch.Slot slot = SEARCH.claim();
+                        return slot == null ? session.remove(SLOT_KEY) : session.set(SLOT_KEY, slot);
+                    })
+                    .doIfOrElse(session -> session.contains(SLOT_KEY)).then(
+                            pause(session -> CapacitySearch.delay(session.get(SLOT_KEY)))
+                                    .exec(requests())
+                                    // a failed request fails the session until reset, which is what tells us about it
+                                    .exec(session -> {
+                                        SEARCH.record(session.get(SLOT_KEY), !session.isFailed());
+                                        return session.markAsSucceeded().remove(SLOT_KEY);
+                                    }))
+                    .orElse(pause(CapacitySearch.IDLE_WAIT)));
+
+    public CapacitySearchSimulation() {
+        setUp(scenario, loadProfile).protocols(httpProtocol);
+    }
+
+    @Override
+    public void before() {
+        super.before();
+        DEBUG.log("Running load profile " + loadProfile);
+        SEARCH.start();
+    }
+
+    @Override
+    public void after() {
+        List<CapacitySearch.Result> results = SEARCH.results(Duration.ofSeconds(5));
+        SEARCH.writeJson(results, RESULT);
+        System.out.println("Capacity search, written to " + RESULT.toAbsolutePath() + ":");
+        for (CapacitySearch.Result result : results) {
+            System.out.printf(Locale.ROOT, "  %-24s %8.1f rps%s%n", result.endpoint(), result.maxSustainableRps(),
+                    result.capped() ? " (CAPACITY_MAX_RPS reached)"
+                            : result.belowStart() ? " (below CAPACITY_START_RPS)" : "");
+        }
+        super.after();
+    }
+
+    // one doIf per endpoint rather than a doSwitch, which needs two endpoints at least
+    private static ChainBuilder requests() {
+        ChainBuilder requests = exec(session -> session);
+        for (Endpoint endpoint : ENDPOINTS) {
+            requests = requests.doIf(session -> session.<CapacitySearch.Slot>get(SLOT_KEY).endpoint().equals(endpoint.label))
+                    .then(request(endpoint));
+        }
+        return requests;
+    }
+
+    private static ChainBuilder request(Endpoint endpoint) {
+        return switch (endpoint) {
+            case AUTHENTICATE -> exec(authenticationRequest());
+            case LIST -> exec(http(endpoint.label).get(VIDEO_GAME_ENDPOINT.getName()));
+            case CREATE -> exec(http(endpoint.label)
+                    .post(VIDEO_GAME_ENDPOINT.getName())
+                    .header(AUTH_HEADER, getAuthValue())
+                    .body(StringBody(CREATE_GAME_BODY))
+                    .check(jmesPath("id").ofLong().optional().saveAs(CREATED_GAME_ID_KEY)))
+                    .exec(queueCreatedGameForCleanup);
+            case DELETE -> exec(http(endpoint.label)
+                    .delete(randomGamePath())
+                    .header(AUTH_HEADER, getAuthValue()));
+        };
+    }
+}
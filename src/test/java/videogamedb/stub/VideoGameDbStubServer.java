@@ -0,0 +1,370 @@
+package videogamedb.stub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static data.EndpointEnum.AUTHENTICATE_ENDPOINT;
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * In-process stand-in for the VideoGameDb API, so simulations can run offline and far above the RPS the public site
+ * accepts. Implements {@code /authenticate} and CRUD on {@code /videogame} with the same JSON shapes, seeded from
+ * {@code feeders/gameJsonFile.json}. Every exchange runs on its own virtual thread.
+ * <p>
+ * Like the public API, writes are only echoed back (created games get id 0) unless {@code STUB_PERSIST_WRITES} is set.
+ * Persisted games can be kept out of reads for {@code STUB_VISIBILITY_LAG_MS} after their creation, like a read
+ * replica or a cache catching up, which is what the read-after-write probe measures. Updates and deletes go to the
+ * primary and see them at once, so the cleanup of a game created moments ago still deletes it.
+ * <p>
+ * Runtime parameters: {@code STUB_HOST} (address to bind, default all interfaces with {@code localhost} in
+ * {@link #baseUrl()}), {@code STUB_PORT} (default 8080), {@code STUB_LATENCY_MS} (added to every response, default 0),
+ * {@code STUB_ERROR_RATE} (share of requests answered with 500, default 0.0), {@code STUB_PERSIST_WRITES} (default false),
+ * {@code STUB_VISIBILITY_LAG_MS} (default 0).
+ */
+public class VideoGameDbStubServer {
+
+    public static final String CONTEXT_PATH = "/api";
+
+    private static final String SEED_RESOURCE = "feeders/gameJsonFile.json";
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "admin";
+    private static final long TOKEN_TTL_SECONDS = 3600;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static VideoGameDbStubServer shared;
+
+    static {
+        // without TCP_NODELAY a request sent right after a POST on the same connection waits for the client's delayed
+        // ACK, ~40 ms on Linux, which read-after-write probes would measure as visibility lag; read by the JDK server
+        // when its first instance is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    // host of baseUrl(), null when bound to every interface
+    private final String host;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final boolean persistWrites;
+    private final long visibilityLagMillis;
+    private final Map<Integer, Game> games = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    // epoch milliseconds from which a created game is readable, only for games still lagging
+    private final Map<Integer, Long> visibleFrom = new ConcurrentHashMap<>();
+    private final LongAdder requestCount = new LongAdder();
+    // the JDK server opens its own server channel and has no hook for accepted connections, so connections are told
+    // apart by client address and port; at most one entry per client port, so the set stays within 64k per client host
+    private final Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+
+    public record Game(int id, String name, String releaseDate, int reviewScore, String category, String rating) {
+
+        Game withId(int newId) {
+            return new Game(newId, name, releaseDate, reviewScore, category, rating);
+        }
+    }
+
+    private record Credentials(String username, String password) {
+    }
+
+    public VideoGameDbStubServer(int port, long latencyMillis, double errorRate, boolean persistWrites) throws IOException {
+        this(port, latencyMillis, errorRate, persistWrites, 0);
+    }
+
+    public VideoGameDbStubServer(int port, long latencyMillis, double errorRate, boolean persistWrites,
+                                 long visibilityLagMillis) throws IOException {
+        this(null, port, latencyMillis, errorRate, persistWrites, visibilityLagMillis);
+    }
+
+    /**
+     * A stub bound to {@code host} only, or to every interface when it is null.
+     */
+    public VideoGameDbStubServer(String host, int port, long latencyMillis, double errorRate, boolean persistWrites,
+                                 long visibilityLagMillis) throws IOException {
+        this.host = host;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.persistWrites = persistWrites;
+        this.visibilityLagMillis = visibilityLagMillis;
+        this.server = HttpServer.create(host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port),
+                4096);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext(CONTEXT_PATH + AUTHENTICATE_ENDPOINT.getName(), this::handleAuthenticate);
+        this.server.createContext(CONTEXT_PATH + VIDEO_GAME_ENDPOINT.getName(), this::handleVideoGame);
+        seed();
+    }
+
+    /**
+     * Starts the stub configured from system properties once per JVM and returns it.
+     */
+    public static VideoGameDbStubServer startShared() {
+        return startShared(System.getProperty("STUB_HOST"));
+    }
+
+    /**
+     * Same as {@link #startShared()}, bound to {@code host} (every interface when null) if it isn't running yet.
+     */
+    public static synchronized VideoGameDbStubServer startShared(String host) {
+        if (shared == null) {
+            try {
+                shared = fromSystemProperties(host);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start the VideoGameDb stub server", e);
+            }
+            shared.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::stop, "videogamedb-stub-shutdown"));
+        }
+        return shared;
+    }
+
+    private static VideoGameDbStubServer fromSystemProperties(String host) throws IOException {
+        return new VideoGameDbStubServer(host,
+                Integer.parseInt(System.getProperty("STUB_PORT", "8080")),
+                Long.parseLong(System.getProperty("STUB_LATENCY_MS", "0")),
+                Double.parseDouble(System.getProperty("STUB_ERROR_RATE", "0.0")),
+                Boolean.parseBoolean(System.getProperty("STUB_PERSIST_WRITES", "false")),
+                Long.parseLong(System.getProperty("STUB_VISIBILITY_LAG_MS", "0")));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String baseUrl() {
+        String urlHost = host == null ? "localhost" : host.contains(":") ? "[" + host + "]" : host;
+        return "http://" + urlHost + ":" + server.getAddress().getPort() + CONTEXT_PATH;
+    }
+
+    /**
+     * Requests received since the stub started, whatever their outcome.
+     */
+    public long requestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * Distinct client addresses (host and port) that sent at least one request since the stub started: a lower bound
+     * of the connections opened, as a connection reusing the port of a closed one is not counted again.
+     */
+    public long clientAddressCount() {
+        return clientAddresses.size();
+    }
+
+    private void seed() throws IOException {
+        try (InputStream in = requireNonNull(
+                VideoGameDbStubServer.class.getClassLoader().getResourceAsStream(SEED_RESOURCE),
+                "Couldn't locate " + SEED_RESOURCE)) {
+            List<Game> seedGames = MAPPER.readValue(in, new TypeReference<>() {
+            });
+            seedGames.forEach(game -> games.put(game.id(), game));
+            nextId.set(games.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1);
+        }
+    }
+
+    private void handleAuthenticate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (injectFault(exchange)) {
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            Credentials credentials = readJson(exchange, Credentials.class);
+            if (credentials == null || !USERNAME.equals(credentials.username()) || !PASSWORD.equals(credentials.password())) {
+                sendText(exchange, 401, "Bad credentials");
+                return;
+            }
+            sendJson(exchange, 200, Map.of("token", issueToken()));
+        }
+    }
+
+    private void handleVideoGame(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (injectFault(exchange)) {
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            Integer id = parseId(exchange);
+            if (!"GET".equals(method) && !isAuthorized(exchange)) {
+                sendText(exchange, 403, "Forbidden");
+                return;
+            }
+            switch (method) {
+                case "GET" -> {
+                    if (id == null) {
+                        sendJson(exchange, 200, visibleFrom.isEmpty()
+                                ? games.values()
+                                : games.values().stream().filter(game -> visible(game.id())).toList());
+                    } else {
+                        sendGame(exchange, visible(id) ? games.get(id) : null);
+                    }
+                }
+                case "POST" -> {
+                    Game game = readJson(exchange, Game.class);
+                    if (game == null) {
+                        sendText(exchange, 400, "Invalid game");
+                        return;
+                    }
+                    if (!persistWrites) {
+                        sendJson(exchange, 200, game.withId(0));
+                        return;
+                    }
+                    Game created = game.withId(nextId.getAndIncrement());
+                    if (visibilityLagMillis > 0) {
+                        visibleFrom.put(created.id(), System.currentTimeMillis() + visibilityLagMillis);
+                    }
+                    games.put(created.id(), created);
+                    sendJson(exchange, 200, created);
+                }
+                case "PUT" -> {
+                    Game game = readJson(exchange, Game.class);
+                    if (id == null || game == null || !games.containsKey(id)) {
+                        sendText(exchange, 404, "Video game not found");
+                        return;
+                    }
+                    Game updated = game.withId(id);
+                    if (persistWrites) {
+                        games.put(id, updated);
+                    }
+                    sendJson(exchange, 200, updated);
+                }
+                case "DELETE" -> {
+                    if (id == null || (persistWrites ? games.remove(id) : games.get(id)) == null) {
+                        sendText(exchange, 404, "Video game not found");
+                        return;
+                    }
+                    visibleFrom.remove(id);
+                    sendText(exchange, 200, "Video game deleted");
+                }
+                default -> sendText(exchange, 405, "Method not allowed");
+            }
+        }
+    }
+
+    private boolean visible(int id) {
+        Long from = visibleFrom.get(id);
+        if (from == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < from) {
+            return false;
+        }
+        visibleFrom.remove(id);
+        return true;
+    }
+
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        requestCount.increment();
+        clientAddresses.add(exchange.getRemoteAddress());
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            sendText(exchange, 500, "Injected error");
+            return true;
+        }
+        return false;
+    }
+
+    private static Integer parseId(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String prefix = CONTEXT_PATH + VIDEO_GAME_ENDPOINT.getName() + "/";
+        if (!path.startsWith(prefix) || path.length() == prefix.length()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(path.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isAuthorized(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith("Bearer ") && authorization.length() > "Bearer ".length();
+    }
+
+    // same claims as the real API (sub, iat, exp), the signature is not meant to be verified
+    private static String issueToken() {
+        long now = Instant.now().getEpochSecond();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString("{\"sub\":\"%s\",\"iat\":%d,\"exp\":%d}"
+                .formatted(USERNAME, now, now + TOKEN_TTL_SECONDS).getBytes(StandardCharsets.UTF_8));
+        String signature = encoder.encodeToString("videogamedb-stub".getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + "." + signature;
+    }
+
+    private static <T> T readJson(HttpExchange exchange, Class<T> type) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return MAPPER.readValue(body, type);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static void sendGame(HttpExchange exchange, Game game) throws IOException {
+        if (game == null) {
+            sendText(exchange, 404, "Video game not found");
+        } else {
+            sendJson(exchange, 200, game);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        send(exchange, status, "application/json", MAPPER.writeValueAsBytes(body));
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "text/plain", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // sidecar mode: ./mvnw exec:java -Dexec.classpathScope=test -Dexec.mainClass=videogamedb.stub.VideoGameDbStubServer
+    public static void main(String[] args) throws IOException {
+        VideoGameDbStubServer server = fromSystemProperties(System.getProperty("STUB_HOST"));
+        server.start();
+        System.out.println("VideoGameDb stub server listening on " + server.baseUrl());
+    }
+}
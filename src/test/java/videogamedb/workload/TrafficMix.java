@@ -0,0 +1,273 @@
+package videogamedb.workload;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static data.EndpointEnum.AUTHENTICATE_ENDPOINT;
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
+
+/**
+ * The share of each API operation in the traffic a run sends, e.g. 85% reads of one game, 10% lists, 4% creates and
+ * 1% deletes, so the load has production's proportions instead of those of a scripted journey.
+ * <p>
+ * A mix is either a HOCON file of {@code src/test/resources/traffic-mix} (or any file), weights per operation that
+ * don't have to add up to 100:
+ * <pre>
+ * operations {
+ *   get = 85
+ *   list = 10
+ *   create = 4
+ *   delete = 1
+ * }
+ * </pre>
+ * or counted from an access log in common or combined log format, by method and path of every request line. Lines
+ * of other paths (static files, health checks) are counted as skipped. {@link #main(String[])} writes the mix of an
+ * access log as a file, so it is counted once and kept under version control.
+ */
+public final class TrafficMix {
+
+    public static final String MIX_DIRECTORY = "traffic-mix/";
+
+    public enum Operation {
+        GET("GET /videogame/{id}"),
+        LIST("GET /videogame"),
+        CREATE("POST /videogame"),
+        UPDATE("PUT /videogame/{id}"),
+        DELETE("DELETE /videogame/{id}"),
+        AUTHENTICATE("POST /authenticate");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        static Operation parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        // method and path without the base path and query string, null for requests outside the video game API
+        static Operation classify(String method, String path) {
+            String games = VIDEO_GAME_ENDPOINT.getName();
+            boolean collection = path.equals(games) || path.equals(games + "/");
+            boolean single = path.startsWith(games + "/") && GAME_ID.matcher(path.substring(games.length() + 1)).matches();
+            return switch (method) {
+                case "GET" -> collection ? LIST : single ? GET : null;
+                case "POST" -> collection ? CREATE : path.equals(AUTHENTICATE_ENDPOINT.getName()) ? AUTHENTICATE : null;
+                case "PUT" -> single ? UPDATE : null;
+                case "DELETE" -> single ? DELETE : null;
+                default -> null;
+            };
+        }
+    }
+
+    private static final Pattern GAME_ID = Pattern.compile("\\d+/?");
+    // the request line of common and combined log formats, "GET /api/videogame/3 HTTP/1.1", or a bare "GET /path"
+    private static final Pattern REQUEST_LINE = Pattern.compile("(?:^|\")([A-Z]+) (\\S+)");
+
+    private final String source;
+    private final Map<Operation, Double> weights;
+    private final long skipped;
+
+    private TrafficMix(String source, Map<Operation, Double> weights, long skipped) {
+        this.source = source;
+        this.weights = weights;
+        this.skipped = skipped;
+    }
+
+    /**
+     * The mix of {@code TRAFFIC_MIX_ACCESS_LOG} when set, otherwise the mix file {@code TRAFFIC_MIX} (default
+     * {@code production}). {@code basePath} is the path of the base URL, e.g. {@code /api}, removed from logged paths.
+     */
+    public static TrafficMix fromSystemProperties(String basePath) {
+        String accessLog = System.getProperty("TRAFFIC_MIX_ACCESS_LOG");
+        return accessLog != null
+                ? fromAccessLog(Path.of(accessLog), basePath)
+                : load(System.getProperty("TRAFFIC_MIX", "production"));
+    }
+
+    /**
+     * Loads {@code traffic-mix/<nameOrPath>.conf} from the classpath, or the file {@code nameOrPath} when it exists.
+     */
+    public static TrafficMix load(String nameOrPath) {
+        File file = new File(nameOrPath);
+        Config mix = file.isFile()
+                ? ConfigFactory.parseFile(file, ConfigParseOptions.defaults().setAllowMissing(false))
+                : ConfigFactory.parseResources(MIX_DIRECTORY + nameOrPath + ".conf",
+                ConfigParseOptions.defaults().setAllowMissing(false));
+        try {
+            Config operations = mix.resolve().getConfig("operations");
+            Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+            for (String operation : operations.root().keySet()) {
+                double weight = operations.getDouble(operation);
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Negative weight for " + operation);
+                }
+                weights.put(Operation.parse(operation), weight);
+            }
+            return of(nameOrPath, weights, 0);
+        } catch (ConfigException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid traffic mix " + nameOrPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Counts the operations of an access log, read line by line so logs of any size fit.
+     */
+    public static TrafficMix fromAccessLog(Path log, String basePath) {
+        long[] counts = new long[Operation.values().length];
+        long skipped = 0;
+        // access logs are mostly ASCII, ISO-8859-1 reads whatever else a client put in a path without failing
+        try (Stream<String> lines = Files.lines(log, StandardCharsets.ISO_8859_1)) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                Matcher request = REQUEST_LINE.matcher(line);
+                Operation operation = request.find()
+                        ? Operation.classify(request.group(1), stripBasePath(stripQuery(request.group(2)), basePath))
+                        : null;
+                if (operation == null) {
+                    skipped++;
+                } else {
+                    counts[operation.ordinal()]++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read access log " + log, e);
+        }
+        Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            if (counts[operation.ordinal()] > 0) {
+                weights.put(operation, (double) counts[operation.ordinal()]);
+            }
+        }
+        try {
+            return of(log.toString(), weights, skipped);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Access log " + log + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static TrafficMix of(String source, Map<Operation, Double> weights, long skipped) {
+        weights.values().removeIf(weight -> weight == 0);
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("no operation with a weight above 0");
+        }
+        return new TrafficMix(source, Collections.unmodifiableMap(weights), skipped);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Access log lines that weren't a request of the video game API, 0 for mix files.
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Share of every operation of the mix in percent, in {@link Operation} order. The last share takes the rounding
+     * remainder, so they add up to exactly 100.
+     */
+    public Map<Operation, Double> percentages() {
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        Map<Operation, Double> percentages = new EnumMap<>(Operation.class);
+        double assigned = 0;
+        int remaining = weights.size();
+        for (Map.Entry<Operation, Double> weight : weights.entrySet()) {
+            double percentage = --remaining == 0 ? 100 - assigned : weight.getValue() * 100 / total;
+            percentages.put(weight.getKey(), percentage);
+            assigned += percentage;
+        }
+        return Collections.unmodifiableMap(percentages);
+    }
+
+    /**
+     * Arrival rate of every operation when the whole mix arrives at {@code totalRate} per second.
+     */
+    public Map<Operation, Double> rates(double totalRate) {
+        Map<Operation, Double> rates = new EnumMap<>(Operation.class);
+        percentages().forEach((operation, percentage) -> rates.put(operation, totalRate * percentage / 100));
+        return Collections.unmodifiableMap(rates);
+    }
+
+    /**
+     * The mix as a file {@link #load(String)} reads back.
+     */
+    public String render() {
+        StringBuilder conf = new StringBuilder("# traffic mix of ").append(source).append('\n');
+        if (skipped > 0) {
+            conf.append("# ").append(skipped).append(" lines outside the video game API skipped\n");
+        }
+        conf.append("operations {\n");
+        weights.forEach((operation, weight) -> conf.append(String.format(Locale.ROOT, "  %s = %s%n",
+                operation.name().toLowerCase(Locale.ROOT),
+                weight == Math.rint(weight) ? String.valueOf(weight.longValue()) : weight.toString())));
+        return conf.append("}\n").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder mix = new StringBuilder(source).append(" (");
+        percentages().forEach((operation, percentage) -> mix
+                .append(String.format(Locale.ROOT, "%s %.1f%%, ", operation.label(), percentage)));
+        mix.setLength(mix.length() - 2);
+        return mix.append(')').toString();
+    }
+
+    private static String stripQuery(String path) {
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    private static String stripBasePath(String path, String basePath) {
+        if (basePath == null || basePath.isEmpty() || basePath.equals("/")) {
+            return path;
+        }
+        String prefix = basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
+        return path.startsWith(prefix + "/") ? path.substring(prefix.length()) : path;
+    }
+
+    /**
+     * Writes the mix of an access log as a mix file:
+     * <pre>
+     * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=videogamedb.workload.TrafficMix \
+     *     -Dexec.args="/var/log/nginx/access.log src/test/resources/traffic-mix/black-friday.conf"
+     * </pre>
+     * The base path removed from the logged paths is {@code /api} unless a third argument gives another one.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: TrafficMix <access.log> <mix.conf> [base path]");
+            System.exit(2);
+        }
+        TrafficMix mix = fromAccessLog(Path.of(args[0]), args.length == 3 ? args[2] : "/api");
+        Path target = Path.of(args[1]);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Files.writeString(target, mix.render(), StandardCharsets.UTF_8);
+        System.out.println("Wrote " + mix + " to " + target
+                + (mix.skipped() > 0 ? ", " + mix.skipped() + " lines skipped" : ""));
+    }
+}
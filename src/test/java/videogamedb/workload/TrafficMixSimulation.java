@@ -0,0 +1,101 @@
+package videogamedb.workload;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Choice;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+import videogamedb.scriptfundamentals.BaseSimulation;
+import videogamedb.scriptfundamentals.LoadProfile;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static data.EndpointEnum.VIDEO_GAME_ENDPOINT;
+import static io.gatling.javaapi.core.CoreDsl.StringBody;
+import static io.gatling.javaapi.core.CoreDsl.exec;
+import static io.gatling.javaapi.core.CoreDsl.jmesPath;
+import static io.gatling.javaapi.core.CoreDsl.percent;
+import static io.gatling.javaapi.core.CoreDsl.randomSwitch;
+
+/**
+ * Sends the operations of a {@link TrafficMix} in its proportions, at {@code TARGET_RPS} requests per second in total.
+ * Every user arriving draws one operation from the mix, sends it and leaves, so each operation arrives at
+ * {@code TARGET_RPS} times its share, independently of the response times of the others.
+ * <p>
+ * Operations reuse the requests of the other simulations: reads and deletes draw their game with the
+ * {@code GAME_ID_*} settings, created games are cleaned up per {@code CLEANUP}. With {@code PER_USER_AUTH=true} the
+ * users sending writes log in first, which adds {@code Authenticate} requests on top of the mix.
+ */
+public class TrafficMixSimulation extends BaseSimulation {
+
+    private static final String GAME_BODY = """
+            {
+              "category": "Platform",
+              "name": "Mario",
+              "rating": "Mature",
+              "releaseDate": "2012-05-04",
+              "reviewScore": 85
+            }
+            """;
+
+    private static final TrafficMix MIX = TrafficMix.fromSystemProperties(URI.create(BASE_URL).getPath());
+
+    private static final double TARGET_RPS = Double.parseDouble(System.getProperty("TARGET_RPS", "20"));
+
+    private static final HttpProtocolBuilder httpProtocol = buildHttpProtocol();
+
+    // one request per user, so the arrival rate is the request rate; TEST_DURATION and RAMP_DURATION are read by the
+    // profile
+    private static final LoadProfile loadProfile = LoadProfile.fromSystemProperties("traffic-mix",
+            Map.of("MIX_RATE", String.valueOf(TARGET_RPS)));
+
+    private static final ScenarioBuilder scenario = scenario("Traffic mix " + MIX.source())
+            .exec(mix());
+
+    public TrafficMixSimulation() {
+        setUp(scenario, loadProfile).protocols(httpProtocol);
+    }
+
+    @Override
+    public void before() {
+        super.before();
+        DEBUG.log("Running load profile " + loadProfile);
+        System.out.println("Traffic mix " + MIX.source()
+                + (MIX.skipped() > 0 ? ", " + MIX.skipped() + " access log lines skipped" : "") + ":");
+        MIX.rates(TARGET_RPS).forEach((operation, rate) -> System.out.printf(Locale.ROOT,
+                "  %-24s %5.1f%% %8.2f rps%n", operation.label(), MIX.percentages().get(operation), rate));
+    }
+
+    private static ChainBuilder mix() {
+        List<Choice.WithWeight> choices = MIX.percentages().entrySet().stream()
+                .map(share -> percent(share.getValue()).then(operation(share.getKey())))
+                .toList();
+        return randomSwitch().on(choices);
+    }
+
+    private static ChainBuilder operation(TrafficMix.Operation operation) {
+        return switch (operation) {
+            case GET -> exec(http("Get specific game").get(randomGamePath()));
+            case LIST -> exec(http("Get all video games").get(VIDEO_GAME_ENDPOINT.getName()));
+            case CREATE -> exec(authenticate)
+                    .exec(http("Create new game")
+                            .post(VIDEO_GAME_ENDPOINT.getName())
+                            .header(AUTH_HEADER, getAuthValue())
+                            .body(StringBody(GAME_BODY))
+                            .check(jmesPath("id").ofLong().optional().saveAs(CREATED_GAME_ID_KEY)))
+                    .exec(queueCreatedGameForCleanup);
+            case UPDATE -> exec(authenticate)
+                    .exec(http("Update game")
+                            .put(randomGamePath())
+                            .header(AUTH_HEADER, getAuthValue())
+                            .body(StringBody(GAME_BODY)));
+            case DELETE -> exec(authenticate)
+                    .exec(http("Delete game")
+                            .delete(randomGamePath())
+                            .header(AUTH_HEADER, getAuthValue()));
+            case AUTHENTICATE -> exec(authenticationRequest());
+        };
+    }
+}